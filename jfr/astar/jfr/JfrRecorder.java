@@ -0,0 +1,46 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.jfr;
+
+import astar.util.SearchOptions;
+
+/**
+ * The recorder on JVMs with JFR. {@link SearchEvents} loads it by name so
+ * nothing else links against jdk.jfr.
+ *
+ * @author Ron Coleman
+ */
+class JfrRecorder implements Recorder {
+    @Override
+    public Object begin() {
+        return SearchEvent.start();
+    }
+
+    @Override
+    public void end(Object event, int startX, int startY, int destX, int destY,
+            SearchOptions options, long expansions, long openPeak, Object outcome) {
+        SearchEvent.finish(event, startX, startY, destX, destY, options, expansions, openPeak, outcome);
+    }
+
+    @Override
+    public void install() {
+        PrecomputeEvent.install();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.jfr;
+
+import java.lang.ref.WeakReference;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic flight recorder event describing one cache or precomputed
+ * structure registered with {@link SearchEvents#watch(Status)}.
+ *
+ * @author Ron Coleman
+ */
+@Name("astar.Precompute")
+@Label("Pathfinding Precomputation")
+@Category("A*")
+@Description("Size of a pathfinding cache or precomputed structure")
+@Period("1 s")
+@StackTrace(false)
+class PrecomputeEvent extends Event {
+    @Label("Name")
+    String name;
+
+    @Label("Entries")
+    long entries;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Registers the periodic hook, once.
+     */
+    static void install() {
+        FlightRecorder.addPeriodicEvent(PrecomputeEvent.class, PrecomputeEvent::emit);
+    }
+
+    /**
+     * Emits one event per watched structure still alive.
+     */
+    static void emit() {
+        for (WeakReference<Status> ref : SearchEvents.watched) {
+            Status status = ref.get();
+
+            if (status == null) {
+                SearchEvents.watched.remove(ref);
+                continue;
+            }
+
+            PrecomputeEvent event = new PrecomputeEvent();
+            event.name = status.getStatusName();
+            event.entries = status.getStatusEntries();
+            event.bytes = status.getStatusBytes();
+            event.commit();
+        }
+    }
+}
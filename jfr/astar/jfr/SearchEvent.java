@@ -0,0 +1,114 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.jfr;
+
+import astar.util.SearchOptions;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one path search. Only {@link JfrRecorder}
+ * touches this class so the code still runs on JVMs without JFR.
+ *
+ * @author Ron Coleman
+ */
+@Name("astar.Search")
+@Label("Path Search")
+@Category("A*")
+@Description("One pathfinding query from start to destination")
+@StackTrace(false)
+class SearchEvent extends Event {
+    @Label("Start X")
+    int startX;
+
+    @Label("Start Y")
+    int startY;
+
+    @Label("Destination X")
+    int destX;
+
+    @Label("Destination Y")
+    int destY;
+
+    @Label("Objective")
+    String objective;
+
+    @Label("Heuristic")
+    String heuristic;
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Expansions")
+    long expansions;
+
+    @Label("Open List Peak")
+    long openPeak;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Starts timing a search.
+     * @return Event, or null if nobody is recording it
+     */
+    static SearchEvent start() {
+        SearchEvent event = new SearchEvent();
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * Fills in and commits an event from start().
+     */
+    static void finish(Object event, int startX, int startY, int destX, int destY,
+            SearchOptions options, long expansions, long openPeak, Object outcome) {
+        SearchEvent e = (SearchEvent) event;
+
+        e.end();
+
+        if (!e.shouldCommit()) {
+            return;
+        }
+
+        e.startX = startX;
+        e.startY = startY;
+        e.destX = destX;
+        e.destY = destY;
+        e.objective = String.valueOf(options.objective);
+        e.heuristic = String.valueOf(options.heuristic);
+        e.engine = String.valueOf(options.engine);
+        e.expansions = expansions;
+        e.openPeak = openPeak;
+        e.outcome = String.valueOf(outcome);
+
+        e.commit();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.util.Config;
+import astar.util.Config.Engine;
+import astar.util.Config.Objective;
+import astar.util.SearchOptions;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Measures the bytes each engine and objective allocates per query and
+ * fails when any exceeds its budget, so allocation-free paths stay that
+ * way. Bytes come from the per-thread allocation counter of the JVM and
+ * only the search on the calling thread is counted, so the worker threads
+ * of the PARALLEL engine are not.
+ * <p>
+ * Nor does the counter see direct memory: for OFF_HEAP only the small
+ * buffer objects count, never the slabs behind them. That engine's budget
+ * bounds its heap garbage alone; {@link DirectState} is what keeps its
+ * direct memory in check, by reusing slabs across queries.
+ * <p>
+ * The budget file is JSON:
+ * <pre>
+ * {
+ *     "width": 64, "height": 64, "seed": 0, "queries": 200, "warmup": 200,
+ *     "budgets": { "heap/basic": 400000, "classic/pretty": 900000 }
+ * }
+ * </pre>
+ * Each budget is the most bytes a query of that engine and objective may
+ * allocate on average, after warmup queries have let the JIT settle.
+ * <p>
+ * Usage: <code>AllocationBudget -budget file.json</code>
+ * <p>
+ * Exits with status 2 if a budget is exceeded and 3 if the JVM can't count
+ * allocations.
+ *
+ * @author Ron Coleman
+ */
+public class AllocationBudget {
+    public final static int DEFAULT_QUERIES = 200;
+    public final static int DEFAULT_WARMUP = 200;
+
+    protected final int width;
+    protected final int height;
+    protected final long seed;
+    protected final int queries;
+    protected final int warmup;
+
+    protected final com.sun.management.ThreadMXBean threads;
+
+    // Bytes the counter itself costs per reading
+    protected long overhead;
+
+    // Worlds, built before anything is counted
+    protected final List<Astar> worlds = new ArrayList<>();
+
+    /**
+     * Result of one engine and objective.
+     */
+    public static class Result {
+        public final String key;
+        public final long budget;
+        public final double mean;
+        public final long max;
+
+        Result(String key, long budget, double mean, long max) {
+            this.key = key;
+            this.budget = budget;
+            this.mean = mean;
+            this.max = max;
+        }
+
+        public boolean isOver() {
+            return mean > budget;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param width Width of each world
+     * @param height Height of each world
+     * @param seed Seed of the first world, others use seed + index
+     * @param queries Queries counted per engine and objective
+     * @param warmup Queries run first and not counted
+     * @throws UnsupportedOperationException If the JVM can't count
+     * allocations per thread
+     */
+    public AllocationBudget(int width, int height, long seed, int queries, int warmup) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.queries = queries;
+        this.warmup = warmup;
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new UnsupportedOperationException("no allocation counter in this JVM");
+        }
+
+        this.threads = (com.sun.management.ThreadMXBean) bean;
+
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("no allocation counter in this JVM");
+        }
+
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < queries; i++) {
+            LevelGenerator level = new LevelGenerator(width, height, seed + i);
+
+            level.layout();
+
+            worlds.add(new Astar(level.getMap(), level.getStartX(), level.getStartY(),
+                    level.getDestX(), level.getDestY()));
+        }
+
+        calibrate();
+    }
+
+    /**
+     * Measures what two readings of the counter cost on their own.
+     */
+    protected final void calibrate() {
+        long id = Thread.currentThread().getId();
+
+        overhead = Long.MAX_VALUE;
+
+        for (int k = 0; k < 100; k++) {
+            long before = threads.getThreadAllocatedBytes(id);
+            long after = threads.getThreadAllocatedBytes(id);
+
+            overhead = Math.min(overhead, after - before);
+        }
+    }
+
+    /**
+     * Measures one engine and objective.
+     * @param key Budget key, engine and objective as in "heap/basic"
+     * @param budget Most bytes allowed per query on average
+     * @return Result
+     * @throws IllegalArgumentException If the key names no engine or
+     * objective
+     */
+    public Result measure(String key, long budget) {
+        String[] parts = key.split("/");
+
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("bad budget key " + key);
+        }
+
+        SearchOptions options = Config.getInstance().getDefaults()
+                .withEngine(Engine.valueOf(parts[0].toUpperCase()))
+                .withObjective(Objective.valueOf(parts[1].toUpperCase()));
+
+        for (int k = 0; k < warmup; k++) {
+            worlds.get(k % worlds.size()).find(options);
+        }
+
+        long id = Thread.currentThread().getId();
+        long total = 0;
+        long max = 0;
+
+        for (Astar astar : worlds) {
+            long before = threads.getThreadAllocatedBytes(id);
+
+            astar.find(options);
+
+            long bytes = Math.max(0, threads.getThreadAllocatedBytes(id) - before - overhead);
+
+            total += bytes;
+            max = Math.max(max, bytes);
+        }
+
+        return new Result(key, budget, (double) total / worlds.size(), max);
+    }
+
+    /**
+     * Builds the report, one row per engine and objective.
+     * @param results Results
+     * @return Report as CSV
+     */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder("budget,mean_bytes,max_bytes,limit,status\n");
+
+        for (Result r : results) {
+            sb.append(r.key).append(',').append(Math.round(r.mean)).append(',').append(r.max).append(',')
+                    .append(r.budget).append(',').append(r.isOver() ? "over" : "ok").append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    private static int get(JSONObject json, String key, int otherwise) {
+        Object value = json.get(key);
+
+        return value == null ? otherwise : ((Long) value).intValue();
+    }
+
+    /**
+     * Main method.
+     * @param args Command line arguments, see class comment
+     * @throws IOException If the budget file can't be read
+     * @throws ParseException If the budget file isn't JSON
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        String path = null;
+
+        // Every option takes a value
+        if (args.length % 2 != 0) {
+            System.err.println("no value for option " + args[args.length - 1]);
+            System.exit(1);
+        }
+
+        for (int k = 0; k + 1 < args.length; k += 2) {
+            switch (args[k]) {
+                case "-budget":
+                    path = args[k + 1];
+                    break;
+                default:
+                    System.err.println("bad option " + args[k]);
+                    System.exit(1);
+            }
+        }
+
+        if (path == null) {
+            System.err.println("no budget file, use -budget file.json");
+            System.exit(1);
+        }
+
+        JSONObject json;
+
+        try (FileReader reader = new FileReader(path)) {
+            json = (JSONObject) new JSONParser().parse(reader);
+        }
+
+        Config config = Config.getInstance();
+        Object seed = json.get("seed");
+
+        AllocationBudget harness;
+
+        try {
+            harness = new AllocationBudget(get(json, "width", config.map.width), get(json, "height", config.map.height),
+                    seed == null ? 0 : (Long) seed, get(json, "queries", DEFAULT_QUERIES),
+                    get(json, "warmup", DEFAULT_WARMUP));
+        } catch (UnsupportedOperationException e) {
+            System.err.println(e.getMessage());
+            System.exit(3);
+            return;
+        }
+
+        JSONObject budgets = (JSONObject) json.get("budgets");
+        List<Result> results = new ArrayList<>();
+        boolean over = false;
+
+        // In key order so reports line up from run to run
+        List<String> keys = new ArrayList<>();
+
+        for (Object key : budgets.keySet()) {
+            keys.add((String) key);
+        }
+
+        Collections.sort(keys);
+
+        for (String key : keys) {
+            Result result = harness.measure(key, (Long) budgets.get(key));
+
+            results.add(result);
+            over |= result.isOver();
+        }
+
+        System.out.print(report(results));
+
+        if (over) {
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.util.Arrays;
+
+/**
+ * Search state in ordinary heap arrays, for grids of up to 2^31 cells.
+ * <p>
+ * The arrays cost about 32 bytes a cell, so states are reused: a closed
+ * state clears the cells its search generated and waits for the next
+ * {@link #acquire(long)} on the same thread. Each thread therefore holds
+ * on to the arrays of its largest recent search.
+ *
+ * @author Ron Coleman
+ */
+public class ArrayState implements SearchState {
+    // Each thread's closed state, waiting to be reused
+    private final static ThreadLocal<ArrayState> spare = new ThreadLocal<>();
+
+    protected double[] g;
+    protected double[] f;
+    protected long[] parents;
+    protected int[] slots;
+    protected int[] heap;
+
+    // Cells given a slot since the state was last cleared
+    protected int[] touched = new int[64];
+    protected int touchedCount;
+
+    protected boolean closed;
+
+    /**
+     * Gets a state with room for a number of cells, reusing the thread's
+     * last closed one if it is big enough.
+     * @param cells Number of cells
+     * @return State, every value zero
+     */
+    public static ArrayState acquire(long cells) {
+        ArrayState state = spare.get();
+
+        if (state != null && state.g.length >= cells) {
+            spare.remove();
+            state.closed = false;
+
+            return state;
+        }
+
+        return new ArrayState(cells);
+    }
+
+    /**
+     * Constructor.
+     * @param cells Number of cells
+     */
+    public ArrayState(long cells) {
+        if (cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many cells for arrays: " + cells);
+        }
+
+        int n = (int) cells;
+
+        g = new double[n];
+        f = new double[n];
+        parents = new long[n];
+        slots = new int[n];
+        heap = new int[n];
+    }
+
+    @Override
+    public double getG(long cell) {
+        return g[(int) cell];
+    }
+
+    @Override
+    public void setG(long cell, double g) {
+        this.g[(int) cell] = g;
+    }
+
+    @Override
+    public double getF(long cell) {
+        return f[(int) cell];
+    }
+
+    @Override
+    public void setF(long cell, double f) {
+        this.f[(int) cell] = f;
+    }
+
+    @Override
+    public long getParent(long cell) {
+        return parents[(int) cell];
+    }
+
+    @Override
+    public void setParent(long cell, long parent) {
+        parents[(int) cell] = parent;
+    }
+
+    @Override
+    public long getSlot(long cell) {
+        return slots[(int) cell];
+    }
+
+    @Override
+    public void setSlot(long cell, long slot) {
+        int c = (int) cell;
+
+        // Searches give a cell a slot whenever they write to it
+        if (slots[c] == 0) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+
+            touched[touchedCount++] = c;
+        }
+
+        slots[c] = (int) slot;
+    }
+
+    @Override
+    public long getHeap(long pos) {
+        return heap[(int) pos];
+    }
+
+    @Override
+    public void setHeap(long pos, long cell) {
+        heap[(int) pos] = (int) cell;
+    }
+
+    /**
+     * Zeroes the touched cells, and the heap positions, which never
+     * outnumber them, and offers the state for reuse.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        for (int k = 0; k < touchedCount; k++) {
+            int c = touched[k];
+
+            g[c] = 0;
+            f[c] = 0;
+            parents[c] = 0;
+            slots[c] = 0;
+        }
+
+        Arrays.fill(heap, 0, touchedCount, 0);
+        touchedCount = 0;
+
+        closed = true;
+
+        ArrayState last = spare.get();
+
+        if (last == null || last.g.length <= g.length) {
+            spare.set(this);
+        }
+    }
+}
@@ -19,9 +19,17 @@
  */
 package astar;
 
+import astar.jfr.SearchEvents;
 import astar.util.Config;
+import astar.util.Config.Engine;
 import static astar.util.Config.Heuristic.EUCLIDEAN;
+import astar.util.Config.Heuristic;
+import astar.util.Config.Metric;
 import astar.util.Config.Objective;
+import astar.util.SearchOptions;
+import astar.world.ArrayWorld;
+import astar.world.World;
+import static astar.util.Config.Objective.ANY_ANGLE;
 import static astar.util.Config.Objective.BASIC;
 import static astar.util.Config.Objective.PRETTY;
 import static astar.util.Config.Objective.STEALTHY;
@@ -42,8 +50,24 @@ public class Astar {
     public final static char SYMBOL_BUG = '?';
     public final static char SYMBOL_FREE = ' ';
     public final static char SYMBOL_STEP = '+';
+    public final static char SYMBOL_MUD = '~';
+    public final static char SYMBOL_DANGER = '!';
 
     public final static int NO_LIMIT = 10000;
+
+    /** Cost of a diagonal step under the octile metric */
+    public final static double COST_DIAGONAL = Math.sqrt(2);
+
+    /**
+     * How a search ended.
+     */
+    public enum Outcome {
+        FOUND,
+        NO_PATH,
+        UNREACHABLE,
+        LIMIT,
+        DEADLINE
+    }
     
     private final static int LUCKY_2 = 2;
     private final static int LUCKY_8 = 8;
@@ -54,6 +78,7 @@ public class Astar {
     private int width;
     private int height;
     private char[][] tileMap;
+    private World world;
     private int destX;
     private int destY;
     private int startX;
@@ -61,6 +86,37 @@ public class Astar {
     private LinkedList openList = new LinkedList();
     private LinkedList closedList = new LinkedList();
 
+    // Statistics of the last search
+    private int expansions;
+    private int generated;
+    private int openPeak;
+    private Outcome outcome;
+
+    // Options of the search in progress
+    private SearchOptions options;
+
+    // Optional region labels to reject unreachable queries up front
+    private ComponentIndex components;
+
+    // Optional step costs, with terrain and maybe an objective compiled in
+    private CostLayer costs;
+
+    // The costs with the last search's objective compiled in, for engines
+    // that can't add surcharges as they go
+    private CostLayer compiled;
+
+    // Optional dead ends for the heap and fringe engines to skip
+    private DeadEndIndex pruning;
+
+    // Optional subgoal graph for the subgoal engine
+    private SubgoalGraph subgoals;
+
+    // Optional first-move table for the CPD engine
+    private FirstMoveTable firstMoves;
+
+    // Optional exact step distances to the destination, row major
+    private int[] distanceField;
+
     // Offsets relative to current position in map
     private int[][] xyOffsets = {
         {-1, 0},    // W
@@ -106,6 +162,26 @@ public class Astar {
         this.height = tileMap.length;
     }
 
+    /**
+     * Constructor for a world that need not be resident, such as a
+     * {@link astar.world.ChunkedWorld}. Only the tiles the search touches
+     * are read.
+     * @param world World
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     */
+    public Astar(World world, int startX, int startY, int destX, int destY) {
+        this.world = world;
+        this.startX = startX;
+        this.startY = startY;
+        this.destX = destX;
+        this.destY = destY;
+        this.width = world.getWidth();
+        this.height = world.getHeight();
+    }
+
     /**
      * Finds a basic path from source to destination.
      * @return Node representing the reverse path.
@@ -124,14 +200,350 @@ public class Astar {
     }
 
     /**
-     * Find path find source to destination.
+     * Find path find source to destination with the configured defaults.
      * @param objective Search objective
      * @param limit Maximum number of nodes to generate.
      * @return Destination node if path found, null if no path found.
      */
     public Node find(Objective objective, int limit) {
+        return find(Config.getInstance().getDefaults().withObjective(objective).withLimit(limit));
+    }
+
+    /**
+     * Find path find source to destination.
+     * @param options Search options
+     * @return Destination node if path found, null if no path found or the
+     * node limit or deadline was reached.
+     */
+    public Node find(SearchOptions options) {
+        Object event = SearchEvents.begin();
+
+        Node path = dispatch(options);
+
+        SearchEvents.end(event, startX, startY, destX, destY, options, expansions, openPeak, outcome);
+
+        return path;
+    }
+
+    /**
+     * Finds a path as start plus directions. The heap and fringe engines
+     * pack it straight from the search; the others convert their nodes.
+     * @param options Search options
+     * @return Path, null if no path found or the node limit or deadline
+     * was reached.
+     */
+    public CompactPath findCompact(SearchOptions options) {
+        if (options.engine != Engine.HEAP && options.engine != Engine.OFF_HEAP && options.engine != Engine.FRINGE) {
+            return CompactPath.of(find(options));
+        }
+
+        Object event = SearchEvents.begin();
+
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+        outcome = Outcome.UNREACHABLE;
+
+        CompactPath path = null;
+
+        if (components == null || components.connected(startX, startY, destX, destY)) {
+            HeapAstar engine = newHeapAstar(options, startX, startY, destX, destY);
+
+            path = engine.findCompact(options);
+
+            expansions = (int) engine.getExpansions();
+            generated = (int) engine.getGenerated();
+            openPeak = (int) engine.getOpenPeak();
+            outcome = engine.getOutcome();
+        }
+
+        SearchEvents.end(event, startX, startY, destX, destY, options, expansions, openPeak, outcome);
+
+        return path;
+    }
+
+    /**
+     * Finds the nearest of several destinations with the configured
+     * defaults. The destination given to the constructor is ignored.
+     * @param goals Destinations
+     * @return Destination node of the path to the nearest reachable
+     * destination, null if none is reachable.
+     */
+    public Node findNearest(List<Node> goals) {
+        List<Node> paths = findNearest(goals, 1, Config.getInstance().getDefaults());
+
+        return paths.isEmpty() ? null : paths.get(0);
+    }
+
+    /**
+     * Finds the k nearest of several destinations in one search. It runs
+     * on a {@link FringeAstar} for the FRINGE engine and on a
+     * {@link HeapAstar} for any other. The
+     * destination given to the constructor is ignored.
+     * <p>
+     * The options' heuristic is replaced by CHECKERS for unit steps and
+     * OCTILE for octile steps: the smallest estimate over the destinations
+     * is only admissible if each estimate is, and EUCLIDEAN, the default,
+     * overestimates diagonal unit steps.
+     * @param goals Destinations
+     * @param k Most destinations to find
+     * @param options Search options
+     * @return Destination nodes of the paths to the k nearest reachable
+     * destinations, nearest first.
+     */
+    public List<Node> findNearest(List<Node> goals, int k, SearchOptions options) {
+        options = options.withHeuristic(options.metric == Metric.OCTILE ? Heuristic.OCTILE : Heuristic.CHECKERS);
+
+        Object event = SearchEvents.begin();
+
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+        outcome = Outcome.UNREACHABLE;
+
+        // A destination in another region could only be ruled out by
+        // exhausting the search
+        List<Node> candidates = new ArrayList<>();
+
+        for (Node goal : goals) {
+            if (components == null || components.connected(startX, startY, goal.getX(), goal.getY())) {
+                candidates.add(goal);
+            }
+        }
+
+        List<Node> paths = Collections.emptyList();
+
+        if (!candidates.isEmpty()) {
+            int[] goalX = new int[candidates.size()];
+            int[] goalY = new int[candidates.size()];
+
+            for (int n = 0; n < goalX.length; n++) {
+                goalX[n] = candidates.get(n).getX();
+                goalY[n] = candidates.get(n).getY();
+            }
+
+            HeapAstar engine = newHeapAstar(options, startX, startY, startX, startY);
+
+            paths = engine.findNearest(goalX, goalY, k, options);
+
+            expansions = (int) engine.getExpansions();
+            generated = (int) engine.getGenerated();
+            openPeak = (int) engine.getOpenPeak();
+            outcome = engine.getOutcome();
+        }
+
+        Node nearest = paths.isEmpty() ? null : paths.get(0);
+
+        SearchEvents.end(event, startX, startY, nearest == null ? destX : nearest.getX(),
+                nearest == null ? destY : nearest.getY(), options, expansions, openPeak, outcome);
+
+        return paths;
+    }
+
+    /**
+     * Runs the search on the engine the options ask for.
+     * @param options Search options
+     * @return Destination node if path found, null otherwise.
+     * @throws IllegalArgumentException If the engine can't run the search
+     * the options ask for
+     */
+    protected Node dispatch(SearchOptions options) {
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+        outcome = Outcome.NO_PATH;
+
+        // No search can cross between disconnected regions
+        if (components != null && !components.connected(startX, startY, destX, destY)) {
+            outcome = Outcome.UNREACHABLE;
+            return null;
+        }
+
+        switch (options.engine) {
+            case HEAP:
+            case OFF_HEAP:
+            case FRINGE:
+                return searchHeap(options);
+            case PARALLEL:
+                return searchParallel(options);
+            case SUBGOAL:
+                // The graph only holds for plain octile steps
+                if (subgoals == null) {
+                    throw new IllegalArgumentException("the subgoal engine needs a subgoal graph");
+                }
+
+                if (options.metric != Metric.OCTILE || options.objective != BASIC || costs != null) {
+                    throw new IllegalArgumentException("the subgoal engine only takes plain octile steps");
+                }
+
+                return searchSubgoal(options);
+            case CPD:
+                // The table only knows plain unit steps
+                if (firstMoves == null) {
+                    throw new IllegalArgumentException("the CPD engine needs a first-move table");
+                }
+
+                if (options.metric != Metric.UNIT || options.objective != BASIC || costs != null) {
+                    throw new IllegalArgumentException("the CPD engine only takes plain unit steps");
+                }
+
+                return searchTable();
+            case CLASSIC:
+            default:
+                // The list-based search only knows unit steps
+                if (options.metric != Metric.UNIT) {
+                    throw new IllegalArgumentException("the classic engine only takes unit steps");
+                }
+
+                return search(options);
+        }
+    }
+
+    /**
+     * Runs the search on a {@link HeapAstar} or {@link FringeAstar} over the
+     * same tiles and costs.
+     * @param options Search options
+     * @return Destination node if path found, null otherwise.
+     */
+    protected Node searchHeap(SearchOptions options) {
+        HeapAstar engine = newHeapAstar(options, startX, startY, destX, destY);
+
+        Node path = engine.find(options);
+
+        expansions = (int) engine.getExpansions();
+        generated = (int) engine.getGenerated();
+        openPeak = (int) engine.getOpenPeak();
+        outcome = engine.getOutcome();
+
+        return path;
+    }
+
+    /**
+     * Creates a {@link HeapAstar} over the same tiles and costs, or a
+     * {@link FringeAstar} for the FRINGE engine.
+     * @throws IllegalArgumentException If the costs can't be had for the
+     * options' objective
+     */
+    protected HeapAstar newHeapAstar(SearchOptions options, int startX, int startY, int destX, int destY) {
+        CostLayer layer = costsFor(options.objective);
+        World tiles = world != null ? world : new ArrayWorld(tileMap);
+
+        HeapAstar engine = options.engine == Engine.FRINGE
+                ? new FringeAstar(tiles, startX, startY, destX, destY)
+                : new HeapAstar(tiles, startX, startY, destX, destY);
+
+        engine.setCosts(layer);
+        engine.setPruning(pruning);
+        engine.setDistanceField(distanceField);
+
+        return engine;
+    }
+
+    /**
+     * Runs the search on a {@link ParallelAstar} with a worker per core.
+     * @param options Search options
+     * @return Destination node if path found, null otherwise.
+     */
+    protected Node searchParallel(SearchOptions options) {
+        CostLayer layer = costsFor(options.objective);
+        World tiles = world != null ? world : new ArrayWorld(tileMap);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        ParallelAstar engine = new ParallelAstar(tiles, startX, startY, destX, destY, threads);
+
+        engine.setCosts(layer);
+        engine.setDistanceField(distanceField);
+
+        Node path = engine.find(options);
+
+        expansions = (int) engine.getExpansions();
+        generated = (int) engine.getGenerated();
+        openPeak = (int) engine.getOpenPeak();
+        outcome = engine.getOutcome();
+
+        return path;
+    }
+
+    /**
+     * Gets the step costs for the engines that only see an objective
+     * compiled into the costs. PRETTY and STEALTHY are compiled from the
+     * tile map on top of any terrain and kept for the next search.
+     * @param objective Search objective
+     * @return Cost layer, or null for unit steps
+     * @throws IllegalArgumentException If the objective can't be compiled
+     */
+    protected CostLayer costsFor(Objective objective) {
+        if (objective == ANY_ANGLE) {
+            throw new IllegalArgumentException("only the classic engine finds any-angle paths");
+        }
+
+        if (objective == BASIC || costs != null && costs.objective == objective) {
+            return costs;
+        }
+
+        if (tileMap == null) {
+            throw new IllegalArgumentException(objective + " needs a tile map or costs compiled for it");
+        }
+
+        if (compiled == null || compiled.objective != objective) {
+            compiled = costs == null ? CostLayer.compile(tileMap, objective) : costs.withObjective(tileMap, objective);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Runs the search on a {@link SubgoalAstar} over the subgoal graph.
+     * @param options Search options
+     * @return Destination node if path found, null otherwise.
+     */
+    protected Node searchSubgoal(SearchOptions options) {
+        SubgoalAstar engine = new SubgoalAstar(subgoals, startX, startY, destX, destY);
+
+        Node path = engine.find(options);
+
+        expansions = (int) engine.getExpansions();
+        generated = (int) engine.getGenerated();
+        openPeak = (int) engine.getOpenPeak();
+        outcome = engine.getOutcome();
+
+        return path;
+    }
+
+    /**
+     * Follows the first-move table, without searching.
+     * @return Destination node if path found, null otherwise.
+     */
+    protected Node searchTable() {
+        Node path = firstMoves.find(startX, startY, destX, destY);
+
+        outcome = path == null ? Outcome.UNREACHABLE : Outcome.FOUND;
+
+        return path;
+    }
+
+    /**
+     * Runs the classic list-based search.
+     * @param options Search options
+     * @return Destination node if path found, null otherwise.
+     */
+    protected Node search(SearchOptions options) {
+        this.options = options;
+
+        Objective objective = options.objective;
+        int limit = options.limit;
+
+        // A cost layer holds the terrain and, if compiled for this search's
+        // objective, its surcharges too
+        double[] raster = costs == null ? null : costs.costs;
+        boolean baked = raster != null && costs.objective == objective;
+
         Node dest = new Node(destX, destY);
 
+        // Each search starts from scratch
+        openList.clear();
+        closedList.clear();
+
         // Start is first node to analyze
         moveToOpen(new Node(startX, startY));
 
@@ -144,12 +556,20 @@ public class Astar {
 
             // We're done if we get to the destination node
             if (curNode.equals(dest)) {
+                outcome = Outcome.FOUND;
                 return relink(curNode);
             }
 
             // Otherwise move current node to closed as we won't analyze it
             // further, only it's adjacent nodes
             moveToClosed(curNode);
+            expansions++;
+
+            // Checking the clock is not free so only do it now and then
+            if ((expansions & 0xFF) == 0 && options.expired()) {
+                outcome = Outcome.DEADLINE;
+                return null;
+            }
 
             // Reset the adjacency state
             reset();
@@ -166,7 +586,16 @@ public class Astar {
                 }
 
                 // Get the known cost, namely, how far we've travelled so far
-                double g = adjNode.length();
+                double g;
+
+                if (objective == ANY_ANGLE) {
+                    g = shortcut(curNode, adjNode);
+                } else if (raster != null) {
+                    g = curNode.getDistance() + raster[adjNode.getY() * width + adjNode.getX()];
+                    adjNode.setDistance(g);
+                } else {
+                    g = adjNode.length();
+                }
                 
                 // Get the heuristic cost, namely, how far we have to go
                 double h = calculateHeuristic(adjNode, dest);
@@ -175,16 +604,21 @@ public class Astar {
                 double cost = g + h;
 
                 // Get any surcharges for non-standard A*
-                cost += surcharge(objective,curNode,adjNode,h);
+                if (!baked) {
+                    cost += surcharge(objective,curNode,adjNode,h);
+                }
 
                 // This node has that cost
                 adjNode.setCost(cost);
 
                 // Add it to the open list to explore later
                 openList.add(adjNode);
+                generated++;
+                openPeak = Math.max(openPeak, openList.size());
 
                 // If we exceed the node limit, then there is no path!
-                if (Node.idCount > limit) {
+                if (generated > limit) {
+                    outcome = Outcome.LIMIT;
                     return null;
                 }
 
@@ -246,6 +680,122 @@ public class Astar {
         return surcharge;
     }
 
+    /**
+     * Theta* step: hang the adjacent node off the grandparent instead of the
+     * current node when there's a clear line between them and it's no
+     * dearer. Distances are straight-line rather than step counts.
+     *
+     * @param node Node being expanded
+     * @param adjNode Adjacent node
+     * @return Distance travelled to the adjacent node
+     */
+    protected double shortcut(Node node, Node adjNode) {
+        Node parent = node.getParent();
+
+        Node from = node;
+        double g = node.getDistance() + lineCost(node.getX(), node.getY(), adjNode.getX(), adjNode.getY());
+
+        if (parent != null && lineOfSight(parent.getX(), parent.getY(), adjNode.getX(), adjNode.getY())) {
+            double direct = parent.getDistance() + lineCost(parent.getX(), parent.getY(), adjNode.getX(), adjNode.getY());
+
+            // Without terrain the straight line always wins; with it, the
+            // line may cross tiles the bend goes around
+            if (direct <= g) {
+                from = parent;
+                g = direct;
+            }
+        }
+
+        adjNode.setParent(from);
+        adjNode.setDistance(g);
+
+        return g;
+    }
+
+    /**
+     * Gets the cost of a straight line: its length, scaled by the mean step
+     * cost of the tiles it enters if there's a cost layer.
+     *
+     * @param x0 From X coordinate.
+     * @param y0 From Y coordinate.
+     * @param x1 To X coordinate.
+     * @param y1 To Y coordinate.
+     * @return Cost
+     */
+    protected double lineCost(int x0, int y0, int x1, int y1) {
+        double length = goEuclidean(x1 - x0, y1 - y0);
+
+        if (costs == null) {
+            return length;
+        }
+
+        int dx = Math.abs(x1 - x0);
+        int dy = Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int err = dx - dy;
+
+        double sum = 0;
+        int tiles = 0;
+
+        while (x0 != x1 || y0 != y1) {
+            int err2 = 2 * err;
+
+            if (err2 > -dy) {
+                err -= dy;
+                x0 += sx;
+            }
+
+            if (err2 < dx) {
+                err += dx;
+                y0 += sy;
+            }
+
+            sum += costs.costs[y0 * width + x0];
+            tiles++;
+        }
+
+        return tiles == 0 ? 0 : length * sum / tiles;
+    }
+
+    /**
+     * Determines if the straight line between two cells is clear using an
+     * integer Bresenham walk.
+     *
+     * @param x0 From X coordinate.
+     * @param y0 From Y coordinate.
+     * @param x1 To X coordinate.
+     * @param y1 To Y coordinate.
+     * @return True if no cell on the line is an obstacle.
+     */
+    protected boolean lineOfSight(int x0, int y0, int x1, int y1) {
+        int dx = Math.abs(x1 - x0);
+        int dy = Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int err = dx - dy;
+
+        while (x0 != x1 || y0 != y1) {
+            if (isObstacle(x0, y0)) {
+                return false;
+            }
+
+            int err2 = 2 * err;
+
+            if (err2 > -dy) {
+                err -= dy;
+                x0 += sx;
+            }
+
+            if (err2 < dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+
+        return !isObstacle(x1, y1);
+    }
+
     /**
      * Relink the child nodes properly since the child references are leftover
      * references from scanning the adjacent nodes.
@@ -273,10 +823,21 @@ public class Astar {
         int x = anode.getX();
         int y = anode.getY();
 
-        return isObstacle(x - 1, y)
-                || isObstacle(x + 1, y)
-                || isObstacle(x, y - 1)
-                || isObstacle(x, y + 1);
+        return isWall(x - 1, y)
+                || isWall(x + 1, y)
+                || isWall(x, y - 1)
+                || isWall(x, y + 1);
+    }
+
+    /**
+     * Determines if x, y is an obstacle or off the map, as CostLayer does.
+     */
+    private boolean isWall(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return true;
+        }
+
+        return isObstacle(x, y);
     }
 
     /**
@@ -399,7 +960,7 @@ public class Astar {
      * @return True if node an obstacle.
      */
     protected boolean isObstacle(int x, int y) {
-        char sym = tileMap[y][x];
+        char sym = world == null ? tileMap[y][x] : world.getTile(x, y);
 
         return sym == SYMBOL_OBSTACLE;
     }
@@ -434,8 +995,29 @@ public class Astar {
         double dy = adj.getY() - dest.getY();
 
         double h = Double.POSITIVE_INFINITY;
+
+        // A precomputed field is exact, no need to estimate
+        if (distanceField != null) {
+            int steps = distanceField[adj.getY() * width + adj.getX()];
+
+            return steps == Wavefront.UNREACHED ? h : steps;
+        }
         
-        switch(Config.getInstance().heuristic) {
+        return estimate(options.heuristic, dx, dy);
+    }
+
+    /**
+     * Estimates the distance still to go.
+     *
+     * @param heuristic Heuristic
+     * @param dx X distance.
+     * @param dy Y distance.
+     * @return Distance.
+     */
+    protected static double estimate(Heuristic heuristic, double dx, double dy) {
+        double h = Double.POSITIVE_INFINITY;
+
+        switch(heuristic) {
             case EUCLIDEAN:
                 h = goEuclidean(dx, dy);
                 break;
@@ -445,6 +1027,12 @@ public class Astar {
             case CHECKERS:
                 h = goCheckers(dx,dy);
                 break;
+            case SSE:
+                h = goSSE(dx,dy);
+                break;
+            case OCTILE:
+                h = goOctile(dx, dy);
+                break;
             default:
                 assert(false);
         }
@@ -452,19 +1040,26 @@ public class Astar {
         return h;
     }
 
-    private double goCheckers(double dx, double dy) {
+    private static double goCheckers(double dx, double dy) {
         return Math.max(Math.abs(dx), Math.abs(dy));
     }
 
-    private double goSSE(double dx, double dy) {
+    private static double goOctile(double dx, double dy) {
+        double lo = Math.min(Math.abs(dx), Math.abs(dy));
+        double hi = Math.max(Math.abs(dx), Math.abs(dy));
+
+        return hi + (COST_DIAGONAL - 1) * lo;
+    }
+
+    private static double goSSE(double dx, double dy) {
         return dx * dx + dy * dy;
     }
 
-    private double goManhattan(double dx, double dy) {
+    private static double goManhattan(double dx, double dy) {
         return Math.abs(dx) + Math.abs(dy);
     }
 
-    private double goEuclidean(double dx, double dy) {
+    private static double goEuclidean(double dx, double dy) {
         return Math.sqrt(goSSE(dx, dy));
     }
 
@@ -500,6 +1095,102 @@ public class Astar {
         return tileMap;
     }
 
+    /**
+     * Sets the region labels used to reject unreachable queries. The index
+     * must be built over this tile map.
+     * @param components Region labels, or null to always search
+     */
+    public void setComponents(ComponentIndex components) {
+        this.components = components;
+    }
+
+    /**
+     * Sets the dead ends the heap and fringe engines skip. The index must be
+     * built over this tile map and the same step costs.
+     * @param pruning Dead ends, or null to skip none
+     */
+    public void setPruning(DeadEndIndex pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Sets the subgoal graph the subgoal engine searches. That engine
+     * refuses to run without one, or under unit steps, objectives or costs.
+     * @param subgoals Graph built over this tile map, or null
+     */
+    public void setSubgoals(SubgoalGraph subgoals) {
+        this.subgoals = subgoals;
+    }
+
+    /**
+     * Sets the first-move table the CPD engine follows. That engine refuses
+     * to run without one, or under octile steps, objectives or costs.
+     * @param firstMoves Table built over this tile map, or null
+     */
+    public void setFirstMoves(FirstMoveTable firstMoves) {
+        this.firstMoves = firstMoves;
+    }
+
+    /**
+     * Sets the step costs. The classic search adds the PRETTY and STEALTHY
+     * surcharges on top unless the layer was compiled for the same
+     * objective; the other engines search a copy with that objective
+     * compiled in.
+     * @param costs Cost layer over this tile map, or null for unit steps
+     */
+    public void setCosts(CostLayer costs) {
+        this.costs = costs;
+        this.compiled = null;
+    }
+
+    public CostLayer getCosts() {
+        return costs;
+    }
+
+    /**
+     * Sets exact step distances to the destination to use as the heuristic
+     * instead of the configured one, see {@link Wavefront#distances(int, int)}.
+     * The classic, heap, fringe and parallel engines read them; the subgoal
+     * and CPD engines need no heuristic, and nearest-destination searches
+     * have no single destination to measure to.
+     * @param distanceField Distances over this tile map, or null
+     */
+    public void setDistanceField(int[] distanceField) {
+        this.distanceField = distanceField;
+    }
+
+    /**
+     * Gets the number of nodes expanded by the last search.
+     * @return Expansions
+     */
+    public int getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * Gets the number of nodes generated by the last search.
+     * @return Generated nodes
+     */
+    public int getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Gets the largest size of the open list during the last search.
+     * @return Open list peak
+     */
+    public int getOpenPeak() {
+        return openPeak;
+    }
+
+    /**
+     * Gets how the last search ended.
+     * @return Outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
     /**
      * Load the tile map from a file. Must invoke constructor with file
      * parameter before invoking this method.
@@ -514,6 +1205,8 @@ public class Astar {
 
             tileMap = new char[height][width];
 
+            boolean terrain = false;
+
             for (int k = 0; k < height; k++) {
                 String row = reader.readLine();
 
@@ -534,8 +1227,18 @@ public class Astar {
                         startX = j;
                         startY = k;
                     }
+
+                    if (sym == SYMBOL_MUD || sym == SYMBOL_DANGER) {
+                        terrain = true;
+                    }
                 }
             }
+
+            // Only maps with terrain need a cost layer. It holds the terrain
+            // alone, so the search still adds its objective's surcharges
+            if (terrain) {
+                setCosts(CostLayer.compile(tileMap, BASIC));
+            }
         } catch (Exception e) {
         }
     }
@@ -545,7 +1248,7 @@ public class Astar {
      *
      * @param args the command line arguments
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // Set up the random seed
         long seed = System.currentTimeMillis();
         
@@ -576,10 +1279,14 @@ public class Astar {
             // Draw the path in the world
             world.walk(path);
             
-            // Output the stats
-            System.out.println(world);
-
-            System.out.println(path+"\n");
+            // Output the stats, streaming rather than building strings
+            Writer out = new OutputStreamWriter(System.out);
+
+            world.render(out);
+            out.write("\n");
+            MapRenderer.render(path, out);
+            out.write("\n\n");
+            out.flush();
             
             System.out.println("path length: "+path.length());
         } else {
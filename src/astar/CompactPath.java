@@ -0,0 +1,356 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.util.Arrays;
+
+/**
+ * An immutable path stored as its start tile and one 3-bit direction per
+ * step, packed into a byte array. Directions are indices into Astar's
+ * offsets: 0 W, 1 NW, 2 N, 3 NE, 4 E, 5 SE, 6 S, 7 SW.
+ * <p>
+ * The text form is <code>startX,startY:</code> followed by one digit per
+ * step, for example <code>3,4:4445</code>.
+ *
+ * @author Ron Coleman
+ */
+public final class CompactPath {
+    public final static int BITS_PER_STEP = 3;
+
+    private final int startX;
+    private final int startY;
+    private final int steps;
+    private final byte[] moves;
+    private final double cost;
+
+    /**
+     * Receives the tiles of a path in order.
+     */
+    public interface Visitor {
+        void visit(int x, int y);
+    }
+
+    /**
+     * Constructor.
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param steps Number of steps
+     * @param moves Packed directions, see {@link #pack(byte[], int, int)}
+     * @param cost Cost of the path
+     */
+    public CompactPath(int startX, int startY, int steps, byte[] moves, double cost) {
+        this.startX = startX;
+        this.startY = startY;
+        this.steps = steps;
+        this.moves = moves;
+        this.cost = cost;
+    }
+
+    /**
+     * Converts a linked path. Nodes more than a tile apart, as any-angle
+     * paths have, are joined by the Bresenham line Astar checks for line
+     * of sight, so the path still visits every tile it crosses.
+     * @param path Any node of the path, or null
+     * @return Path, or null if the node is null
+     */
+    public static CompactPath of(Node path) {
+        if (path == null) {
+            return null;
+        }
+
+        Node start = path;
+        while (start.getParent() != null) {
+            start = start.getParent();
+        }
+
+        int[] dirs = new int[16];
+        int steps = 0;
+
+        Node end = start;
+
+        for (; end.getChild() != null; end = end.getChild()) {
+            Node next = end.getChild();
+
+            int x0 = end.getX();
+            int y0 = end.getY();
+            int x1 = next.getX();
+            int y1 = next.getY();
+
+            int dx = Math.abs(x1 - x0);
+            int dy = Math.abs(y1 - y0);
+            int sx = x0 < x1 ? 1 : -1;
+            int sy = y0 < y1 ? 1 : -1;
+            int err = dx - dy;
+
+            while (x0 != x1 || y0 != y1) {
+                int err2 = 2 * err;
+                int stepX = 0;
+                int stepY = 0;
+
+                if (err2 > -dy) {
+                    err -= dy;
+                    stepX = sx;
+                }
+
+                if (err2 < dx) {
+                    err += dx;
+                    stepY = sy;
+                }
+
+                if (steps == dirs.length) {
+                    dirs = Arrays.copyOf(dirs, steps * 2);
+                }
+
+                dirs[steps++] = direction(stepX, stepY);
+
+                x0 += stepX;
+                y0 += stepY;
+            }
+        }
+
+        byte[] moves = new byte[bytes(steps)];
+
+        for (int k = 0; k < steps; k++) {
+            pack(moves, k, dirs[k]);
+        }
+
+        // The classic search counts steps instead of keeping a distance
+        double cost = end.getDistance();
+
+        if (cost == 0) {
+            cost = steps;
+        }
+
+        return new CompactPath(start.getX(), start.getY(), steps, moves, cost);
+    }
+
+    /**
+     * Parses the text form.
+     * @param text Text from {@link #toString()}
+     * @return Path
+     * @throws IllegalArgumentException If the text isn't a path
+     */
+    public static CompactPath parse(String text) {
+        int comma = text.indexOf(',');
+        int colon = text.indexOf(':');
+
+        if (comma < 0 || colon < comma) {
+            throw new IllegalArgumentException("not a path: " + text);
+        }
+
+        int startX = Integer.parseInt(text.substring(0, comma));
+        int startY = Integer.parseInt(text.substring(comma + 1, colon));
+        int steps = text.length() - colon - 1;
+
+        byte[] moves = new byte[bytes(steps)];
+
+        for (int k = 0; k < steps; k++) {
+            int dir = text.charAt(colon + 1 + k) - '0';
+
+            if (dir < 0 || dir >= HeapAstar.DX.length) {
+                throw new IllegalArgumentException("bad step in path: " + text);
+            }
+
+            pack(moves, k, dir);
+        }
+
+        return new CompactPath(startX, startY, steps, moves, steps);
+    }
+
+    /**
+     * Gets the number of bytes that hold a number of steps.
+     * @param steps Steps
+     * @return Bytes
+     */
+    public static int bytes(int steps) {
+        return (int) (((long) steps * BITS_PER_STEP + 7) >>> 3);
+    }
+
+    /**
+     * Writes the direction of one step.
+     * @param moves Packed directions
+     * @param index Step index
+     * @param dir Direction
+     */
+    static void pack(byte[] moves, int index, int dir) {
+        long bit = (long) index * BITS_PER_STEP;
+        int b = (int) (bit >>> 3);
+        int shift = (int) (bit & 7);
+
+        moves[b] |= (byte) (dir << shift);
+
+        // Three bits from the sixth bit on spill into the next byte
+        if (shift > 5) {
+            moves[b + 1] |= (byte) (dir >>> (8 - shift));
+        }
+    }
+
+    /**
+     * Gets the direction of a one-tile step.
+     * @param dx X delta
+     * @param dy Y delta
+     * @return Direction
+     */
+    public static int direction(int dx, int dy) {
+        for (int k = 0; k < HeapAstar.DX.length; k++) {
+            if (HeapAstar.DX[k] == dx && HeapAstar.DY[k] == dy) {
+                return k;
+            }
+        }
+
+        throw new IllegalArgumentException("not a step: " + dx + "," + dy);
+    }
+
+    /**
+     * Gets the direction of a step.
+     * @param index Step index
+     * @return Direction
+     */
+    public int getDirection(int index) {
+        long bit = (long) index * BITS_PER_STEP;
+        int b = (int) (bit >>> 3);
+        int shift = (int) (bit & 7);
+
+        int word = moves[b] & 0xFF;
+
+        if (shift > 5) {
+            word |= (moves[b + 1] & 0xFF) << 8;
+        }
+
+        return (word >>> shift) & 7;
+    }
+
+    /**
+     * Visits the start and the tile after each step, in order.
+     * @param visitor Visitor
+     */
+    public void forEach(Visitor visitor) {
+        int x = startX;
+        int y = startY;
+
+        visitor.visit(x, y);
+
+        for (int k = 0; k < steps; k++) {
+            int dir = getDirection(k);
+
+            x += HeapAstar.DX[dir];
+            y += HeapAstar.DY[dir];
+
+            visitor.visit(x, y);
+        }
+    }
+
+    /**
+     * Gets the start, the end, and every tile where the direction changes.
+     * @return Coordinates as x0, y0, x1, y1, ...
+     */
+    public int[] getWaypoints() {
+        int[] points = new int[16];
+        int count = 0;
+
+        int x = startX;
+        int y = startY;
+        int last = -1;
+
+        for (int k = 0; k < steps; k++) {
+            int dir = getDirection(k);
+
+            if (dir != last) {
+                if (count + 2 > points.length) {
+                    points = Arrays.copyOf(points, points.length * 2);
+                }
+
+                points[count++] = x;
+                points[count++] = y;
+                last = dir;
+            }
+
+            x += HeapAstar.DX[dir];
+            y += HeapAstar.DY[dir];
+        }
+
+        points = Arrays.copyOf(points, count + 2);
+        points[count++] = x;
+        points[count] = y;
+
+        return points;
+    }
+
+    /**
+     * Builds the linked path of nodes, for code that wants one.
+     * @return Destination node
+     */
+    public Node toNodes() {
+        Node[] last = {null};
+
+        forEach((x, y) -> {
+            Node next = new Node(x, y);
+
+            if (last[0] != null) {
+                next.setParent(last[0]);
+                last[0].setChild(next);
+            }
+
+            last[0] = next;
+        });
+
+        last[0].setDistance(cost);
+
+        return last[0];
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    /**
+     * Gets the number of steps, one less than the number of tiles.
+     * @return Steps
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Gets the cost of the path as the search measured it. Parsed paths
+     * count each step as one.
+     * @return Cost
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(steps + 12);
+
+        sb.append(startX).append(',').append(startY).append(':');
+
+        for (int k = 0; k < steps; k++) {
+            sb.append((char) ('0' + getDirection(k)));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.jfr.SearchEvents;
+import astar.jfr.Status;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * This class labels the 8-connected regions of free tiles so queries between
+ * disconnected regions can be rejected before any search starts.
+ * <p>
+ * Tile edits must go through {@link #setTile(int, int, char)} to keep the
+ * labels current. Opening a tile merges the labels around it; closing one
+ * relabels its region only if the tile was a local cut point.
+ *
+ * @author Ron Coleman
+ */
+public class ComponentIndex implements Status {
+    /**
+     * Label of obstacle tiles.
+     */
+    public final static int NONE = 0;
+
+    /**
+     * Labels are held in pieces of 2^SEGMENT_BITS, one gigabyte each, since
+     * a single buffer can't hold more than two.
+     */
+    public final static int SEGMENT_BITS = 28;
+    public final static int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    // Ring of neighbours in the same order as Astar's offsets
+    private final static int[] DX = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private final static int[] DY = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    protected final char[][] tileMap;
+    protected final int width;
+    protected final int height;
+
+    // Label of each tile, row major, in segments; on the heap or a mapped
+    // snapshot
+    protected IntBuffer[] labels;
+
+    // Union-find over labels; merges only happen on edits
+    protected int[] roots;
+    protected int nextLabel = NONE + 1;
+
+    // Scratch queue for flood fills, allocated on the first one
+    private int[] queue;
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]
+     */
+    public ComponentIndex(char[][] tileMap) {
+        this.tileMap = tileMap;
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+
+        int cells = width * height;
+
+        this.labels = new IntBuffer[(cells >>> SEGMENT_BITS) + 1];
+
+        for (int k = 0; k < labels.length; k++) {
+            labels[k] = IntBuffer.wrap(new int[Math.min(SEGMENT_MASK + 1, cells - (k << SEGMENT_BITS))]);
+        }
+        this.roots = new int[16];
+
+        build();
+
+        SearchEvents.watch(this);
+    }
+
+    /**
+     * Constructor over labels built earlier, for example by a
+     * {@link Snapshot}.
+     * @param tileMap Tile map, indexed [y][x]
+     * @param labels Label of each tile, row major, in segments of
+     * 2^{@link #SEGMENT_BITS}
+     * @param roots Union-find over labels
+     * @param count Number of labels in use, NONE included
+     */
+    protected ComponentIndex(char[][] tileMap, IntBuffer[] labels, int[] roots, int count) {
+        this.tileMap = tileMap;
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+
+        this.labels = labels;
+        this.roots = roots;
+        this.nextLabel = count;
+
+        SearchEvents.watch(this);
+    }
+
+    /**
+     * Labels every region from scratch.
+     */
+    protected final void build() {
+        for (int k = 0; k < width * height; k++) {
+            setLabel(k, NONE);
+        }
+
+        nextLabel = NONE + 1;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (label(y * width + x) == NONE && !isObstacle(x, y)) {
+                    flood(x, y, newLabel(), NONE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines whether two tiles are in the same region.
+     * @param x0 From X coordinate.
+     * @param y0 From Y coordinate.
+     * @param x1 To X coordinate.
+     * @param y1 To Y coordinate.
+     * @return True if a path may exist between the tiles.
+     */
+    public boolean connected(int x0, int y0, int x1, int y1) {
+        int from = label(y0 * width + x0);
+        int to = label(y1 * width + x1);
+
+        if (from == NONE || to == NONE) {
+            return false;
+        }
+
+        return root(from) == root(to);
+    }
+
+    /**
+     * Gets the region of a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Region, or NONE for an obstacle.
+     */
+    public int getComponent(int x, int y) {
+        int label = label(y * width + x);
+
+        return label == NONE ? NONE : root(label);
+    }
+
+    /**
+     * Writes a tile and updates the labels.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @param sym Tile symbol
+     */
+    public void setTile(int x, int y, char sym) {
+        boolean wasObstacle = isObstacle(x, y);
+
+        tileMap[y][x] = sym;
+
+        boolean obstacle = isObstacle(x, y);
+
+        if (wasObstacle && !obstacle) {
+            open(x, y);
+        } else if (!wasObstacle && obstacle) {
+            close(x, y);
+        }
+    }
+
+    /**
+     * A tile became free: it joins, and merges, the regions around it.
+     */
+    protected void open(int x, int y) {
+        int label = NONE;
+
+        for (int k = 0; k < DX.length; k++) {
+            int adjX = x + DX[k];
+            int adjY = y + DY[k];
+
+            if (!inside(adjX, adjY) || isObstacle(adjX, adjY)) {
+                continue;
+            }
+
+            int adj = root(label(adjY * width + adjX));
+
+            if (label == NONE) {
+                label = adj;
+            } else if (adj != label) {
+                // Hang the smaller label under the larger for shallow trees
+                int hi = Math.max(adj, label);
+                roots[Math.min(adj, label)] = hi;
+                label = hi;
+            }
+        }
+
+        setLabel(y * width + x, label == NONE ? newLabel() : label);
+    }
+
+    /**
+     * A tile became an obstacle: its region may have split.
+     */
+    protected void close(int x, int y) {
+        int old = root(label(y * width + x));
+
+        setLabel(y * width + x, NONE);
+
+        if (!splits(x, y)) {
+            return;
+        }
+
+        // Relabel each piece reachable from the neighbours
+        for (int k = 0; k < DX.length; k++) {
+            int adjX = x + DX[k];
+            int adjY = y + DY[k];
+
+            if (!inside(adjX, adjY) || isObstacle(adjX, adjY)) {
+                continue;
+            }
+
+            int adj = label(adjY * width + adjX);
+
+            if (root(adj) == old) {
+                flood(adjX, adjY, newLabel(), old);
+            }
+        }
+    }
+
+    /**
+     * Determines whether the free neighbours of a tile fall apart without
+     * it. If they stay connected inside the 3x3 block, so does the region.
+     */
+    protected boolean splits(int x, int y) {
+        int[] local = new int[DX.length];
+        int pieces = 0;
+
+        for (int k = 0; k < DX.length; k++) {
+            int adjX = x + DX[k];
+            int adjY = y + DY[k];
+
+            local[k] = inside(adjX, adjY) && !isObstacle(adjX, adjY) ? k : -1;
+
+            if (local[k] >= 0) {
+                pieces++;
+            }
+        }
+
+        // Merge neighbours that touch each other, at most one step apart
+        for (int i = 0; i < DX.length; i++) {
+            for (int j = i + 1; j < DX.length; j++) {
+                if (local[i] < 0 || local[j] < 0) {
+                    continue;
+                }
+
+                if (Math.abs(DX[i] - DX[j]) > 1 || Math.abs(DY[i] - DY[j]) > 1) {
+                    continue;
+                }
+
+                int a = localRoot(local, i);
+                int b = localRoot(local, j);
+
+                if (a != b) {
+                    local[a] = b;
+                    pieces--;
+                }
+            }
+        }
+
+        return pieces > 1;
+    }
+
+    private static int localRoot(int[] local, int k) {
+        while (local[k] != k) {
+            k = local[k];
+        }
+
+        return k;
+    }
+
+    /**
+     * Flood fills a region with a label.
+     * @param x Seed X coordinate.
+     * @param y Seed Y coordinate.
+     * @param label New label
+     * @param from Only tiles whose region is this label are filled
+     */
+    protected void flood(int x, int y, int label, int from) {
+        int head = 0;
+        int tail = 0;
+
+        if (queue == null) {
+            queue = new int[width * height];
+        }
+
+        setLabel(y * width + x, label);
+        queue[tail++] = y * width + x;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int cx = cell % width;
+            int cy = cell / width;
+
+            for (int k = 0; k < DX.length; k++) {
+                int adjX = cx + DX[k];
+                int adjY = cy + DY[k];
+
+                if (!inside(adjX, adjY) || isObstacle(adjX, adjY)) {
+                    continue;
+                }
+
+                int adj = adjY * width + adjX;
+                int current = label(adj);
+
+                if (current == label || (from == NONE ? current != NONE : root(current) != from)) {
+                    continue;
+                }
+
+                setLabel(adj, label);
+                queue[tail++] = adj;
+            }
+        }
+    }
+
+    /**
+     * Gets the representative of a label. Reads never write so concurrent
+     * queries are safe while no edits are in flight.
+     */
+    protected int root(int label) {
+        while (roots[label] != label) {
+            label = roots[label];
+        }
+
+        return label;
+    }
+
+    protected int newLabel() {
+        if (nextLabel == roots.length) {
+            roots = Arrays.copyOf(roots, roots.length * 2);
+        }
+
+        roots[nextLabel] = nextLabel;
+
+        return nextLabel++;
+    }
+
+    @Override
+    public String getStatusName() {
+        return "components";
+    }
+
+    @Override
+    public long getStatusEntries() {
+        return nextLabel - 1;
+    }
+
+    @Override
+    public long getStatusBytes() {
+        long bytes = 4L * (roots.length + (queue == null ? 0 : queue.length));
+
+        for (IntBuffer segment : labels) {
+            bytes += 4L * segment.capacity();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Gets the label of a tile.
+     * @param cell Tile index, row major
+     * @return Label
+     */
+    protected int label(int cell) {
+        return labels[cell >>> SEGMENT_BITS].get(cell & SEGMENT_MASK);
+    }
+
+    protected void setLabel(int cell, int label) {
+        labels[cell >>> SEGMENT_BITS].put(cell & SEGMENT_MASK, label);
+    }
+
+    protected boolean inside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    protected boolean isObstacle(int x, int y) {
+        return tileMap[y][x] == Astar.SYMBOL_OBSTACLE;
+    }
+}
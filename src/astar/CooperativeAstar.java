@@ -0,0 +1,421 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Windowed cooperative A* for many agents sharing a map. Each agent
+ * searches (x, y, t) space for the next few steps, avoiding the cells and
+ * swaps other agents have reserved, then reserves its own. Beyond the
+ * window the cost to go is the agent's true distance to its goal, ignoring
+ * other agents.
+ * <p>
+ * True distances come from one {@link Wavefront} pass per goal and are
+ * cached, so agents heading to the same goal share them. Moves are the
+ * same eight as Astar's plus waiting in place, each costing one step;
+ * waiting at the goal is free.
+ * <p>
+ * Plans are reserved only if every cell in them is still free. An agent
+ * whose plan was taken meanwhile plans again; one with no way forward
+ * yields, keeping to free cells as long as it can, and its plan then ends
+ * early: it is safe only that far and the agent must plan again sooner.
+ *
+ * @author Ron Coleman
+ */
+public class CooperativeAstar {
+    public final static int DEFAULT_WINDOW = 16;
+    public final static int DEFAULT_CACHED_GOALS = 64;
+
+    // Times a plan is redone after losing a cell to another agent
+    public final static int RETRIES = 3;
+
+    protected final char[][] tileMap;
+    protected final int width;
+    protected final int height;
+    protected final ReservationTable table;
+    protected final int window;
+    protected final Wavefront wavefront;
+
+    // True distance fields by goal cell, least recently used first
+    protected final Map<Integer, int[]> distances;
+
+    /**
+     * An agent to plan for.
+     */
+    public static class Agent {
+        public final int id;
+        public int x;
+        public int y;
+        public int goalX;
+        public int goalY;
+
+        public Agent(int id, int x, int y, int goalX, int goalY) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.goalX = goalX;
+            this.goalY = goalY;
+        }
+    }
+
+    /**
+     * A state in (x, y, t) space.
+     */
+    protected static class Step implements Comparable<Step> {
+        final int cell;
+        final int depth;
+        final double g;
+        final double f;
+        final Step parent;
+
+        Step(int cell, int depth, double g, double f, Step parent) {
+            this.cell = cell;
+            this.depth = depth;
+            this.g = g;
+            this.f = f;
+            this.parent = parent;
+        }
+
+        @Override
+        public int compareTo(Step other) {
+            // Ties go deeper, toward the end of the window
+            int order = Double.compare(f, other.f);
+
+            return order != 0 ? order : Integer.compare(other.depth, depth);
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]
+     * @param table Reservations shared by every agent
+     * @param window Steps each plan looks ahead
+     */
+    public CooperativeAstar(char[][] tileMap, ReservationTable table, int window) {
+        this.tileMap = tileMap;
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+        this.table = table;
+        this.window = window;
+        this.wavefront = new Wavefront(tileMap);
+
+        this.distances = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > DEFAULT_CACHED_GOALS;
+            }
+        };
+    }
+
+    /**
+     * Gets the true distance of every tile to a goal, computing it once.
+     * @param goal Goal cell, row major
+     * @return Distances, row major, Wavefront.UNREACHED where there is no path
+     */
+    protected int[] distances(int goal) {
+        synchronized (distances) {
+            int[] dist = distances.get(goal);
+
+            if (dist != null) {
+                return dist;
+            }
+        }
+
+        // Computed outside the lock; two threads may race to the same goal
+        int[] dist = wavefront.distances(goal % width, goal / width);
+
+        synchronized (distances) {
+            distances.put(goal, dist);
+        }
+
+        return dist;
+    }
+
+    /**
+     * Plans the next window of steps for one agent without reserving them.
+     * @param agent Agent
+     * @param time Current time step
+     * @return Cells, row major, one per time step from now to the end of the
+     * window; null if the goal is unreachable or the agent is boxed in.
+     */
+    public int[] plan(Agent agent, int time) {
+        int start = agent.y * width + agent.x;
+        int goal = agent.goalY * width + agent.goalX;
+        int[] dist = distances(goal);
+
+        if (dist[start] == Wavefront.UNREACHED) {
+            return null;
+        }
+
+        PriorityQueue<Step> open = new PriorityQueue<>();
+        Set<Long> closed = new HashSet<>();
+
+        open.add(new Step(start, 0, 0, dist[start], null));
+
+        while (!open.isEmpty()) {
+            Step cur = open.poll();
+
+            if (cur.depth == window) {
+                return toCells(cur);
+            }
+
+            if (!closed.add(((long) cur.depth << 32) | cur.cell)) {
+                continue;
+            }
+
+            int x = cur.cell % width;
+            int y = cur.cell / width;
+            int t = time + cur.depth;
+
+            // Offset -1 is waiting in place
+            for (int k = -1; k < HeapAstar.DX.length; k++) {
+                int adjX = k < 0 ? x : x + HeapAstar.DX[k];
+                int adjY = k < 0 ? y : y + HeapAstar.DY[k];
+
+                if (adjX < 0 || adjX >= width || adjY < 0 || adjY >= height) {
+                    continue;
+                }
+
+                int adj = adjY * width + adjX;
+
+                if (dist[adj] == Wavefront.UNREACHED) {
+                    continue;
+                }
+
+                if (!table.canMove(agent.id, cur.cell, adj, t)) {
+                    continue;
+                }
+
+                if (closed.contains(((long) (cur.depth + 1) << 32) | adj)) {
+                    continue;
+                }
+
+                double g = cur.g + (k < 0 && adj == goal ? 0 : 1);
+
+                open.add(new Step(adj, cur.depth + 1, g, g + dist[adj], cur));
+            }
+        }
+
+        return null;
+    }
+
+    private static int[] toCells(Step last) {
+        int[] cells = new int[last.depth + 1];
+
+        for (Step s = last; s != null; s = s.parent) {
+            cells[s.depth] = s.cell;
+        }
+
+        return cells;
+    }
+
+    /**
+     * Plans and reserves for each agent in turn, so earlier agents have
+     * priority. An agent with no plan yields, see {@link #giveWay(Agent, int)}.
+     * @param agents Agents in priority order
+     * @param time Current time step
+     * @return Plan of each agent, in the same order
+     */
+    public List<int[]> planInOrder(List<Agent> agents, int time) {
+        List<int[]> plans = new ArrayList<>();
+
+        for (Agent agent : agents) {
+            plans.add(reserve(agent, plan(agent, time), time));
+        }
+
+        return plans;
+    }
+
+    /**
+     * Plans a batch of agents in parallel against the reservations as they
+     * stand, then reserves the plans in priority order. A plan that clashes
+     * with one reserved before it in the batch is planned again.
+     * @param agents Agents in priority order
+     * @param time Current time step
+     * @param pool Threads to plan on
+     * @return Plan of each agent, in the same order
+     * @throws InterruptedException If interrupted while waiting for plans
+     */
+    public List<int[]> planBatch(List<Agent> agents, int time, ExecutorService pool) throws InterruptedException {
+        List<Future<int[]>> futures = new ArrayList<>();
+
+        for (Agent agent : agents) {
+            futures.add(pool.submit(() -> plan(agent, time)));
+        }
+
+        List<int[]> plans = new ArrayList<>();
+
+        for (int k = 0; k < agents.size(); k++) {
+            Agent agent = agents.get(k);
+            int[] plan;
+
+            try {
+                plan = futures.get(k).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("planning failed for agent " + agent.id, e.getCause());
+            }
+
+            if (plan == null || !fits(agent.id, plan, time)) {
+                plan = plan(agent, time);
+            }
+
+            plans.add(reserve(agent, plan, time));
+        }
+
+        return plans;
+    }
+
+    /**
+     * Determines whether a plan still fits the reservations.
+     */
+    protected boolean fits(int agent, int[] plan, int time) {
+        if (!table.isFree(agent, plan[0], time)) {
+            return false;
+        }
+
+        for (int t = 0; t + 1 < plan.length; t++) {
+            if (!table.canMove(agent, plan[t], plan[t + 1], time + t)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reserves a plan. If another agent got one of its cells first, the
+     * agent plans again, and if that keeps failing, or there was no plan,
+     * it yields.
+     * @param agent Agent
+     * @param plan Plan, or null if there is none
+     * @param time Current time step
+     * @return Plan as reserved, every cell of it held by the agent
+     */
+    protected int[] reserve(Agent agent, int[] plan, int time) {
+        for (int k = 0; plan != null && k < RETRIES; k++) {
+            if (table.reserve(agent.id, plan, time)) {
+                return plan;
+            }
+
+            table.release(agent.id, plan, time);
+
+            plan = plan(agent, time);
+        }
+
+        plan = giveWay(agent, time);
+
+        // Hold the cells that are still free, up to the first that isn't
+        for (int t = 0; t < plan.length; t++) {
+            if (!table.reserve(agent.id, plan[t], time + t)) {
+                return Arrays.copyOf(plan, t);
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * Plans for an agent that can't head for its goal: the longest run of
+     * free cells it can keep to, staying put where it may.
+     * @param agent Agent
+     * @param time Current time step
+     * @return Cells, row major, one per time step from now; shorter than
+     * the window if the agent is cornered, and empty if even its cell now
+     * is taken.
+     */
+    protected int[] giveWay(Agent agent, int time) {
+        int start = agent.y * width + agent.x;
+
+        if (!table.isFree(agent.id, start, time)) {
+            return new int[0];
+        }
+
+        // Cells reachable at each depth, each with the cell it came from
+        List<Map<Integer, Integer>> layers = new ArrayList<>();
+
+        Map<Integer, Integer> layer = new LinkedHashMap<>();
+        layer.put(start, -1);
+        layers.add(layer);
+
+        while (layers.size() <= window) {
+            Map<Integer, Integer> next = new LinkedHashMap<>();
+            int t = time + layers.size() - 1;
+
+            for (int cell : layer.keySet()) {
+                int x = cell % width;
+                int y = cell / width;
+
+                // Offset -1 is waiting in place, tried first
+                for (int k = -1; k < HeapAstar.DX.length; k++) {
+                    int adjX = k < 0 ? x : x + HeapAstar.DX[k];
+                    int adjY = k < 0 ? y : y + HeapAstar.DY[k];
+
+                    if (adjX < 0 || adjX >= width || adjY < 0 || adjY >= height
+                            || tileMap[adjY][adjX] == Astar.SYMBOL_OBSTACLE) {
+                        continue;
+                    }
+
+                    int adj = adjY * width + adjX;
+
+                    if (!next.containsKey(adj) && table.canMove(agent.id, cell, adj, t)) {
+                        next.put(adj, cell);
+                    }
+                }
+            }
+
+            if (next.isEmpty()) {
+                break;
+            }
+
+            layers.add(next);
+            layer = next;
+        }
+
+        // End where it started if it can, else anywhere it lasts as long
+        int cell = layer.containsKey(start) ? start : layer.keySet().iterator().next();
+        int[] plan = new int[layers.size()];
+
+        for (int depth = layers.size() - 1; depth >= 0; depth--) {
+            plan[depth] = cell;
+            cell = layers.get(depth).get(cell);
+        }
+
+        return plan;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public ReservationTable getTable() {
+        return table;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.util.Config.Objective;
+import java.util.Arrays;
+
+/**
+ * This class holds the cost of stepping onto each tile. Terrain and the
+ * search objective are compiled into it once so the search pays a single
+ * array read per neighbour.
+ * <p>
+ * Costs are never below one, the cost of a plain free step, so the
+ * distance heuristics remain admissible.
+ *
+ * @author Ron Coleman
+ */
+public class CostLayer {
+    public final static double COST_FREE = 1.0;
+    public final static double COST_MUD = 3.0;
+    public final static double COST_DANGER = 8.0;
+
+    // Stealthy searches pay extra for tiles out in the open
+    public final static double SURCHARGE_EXPOSED = 0.25;
+
+    // Pretty searches pay extra for tiles that scrape a wall
+    public final static double SURCHARGE_HUGGING = 1.0;
+
+    protected final int width;
+    protected final int height;
+
+    // Objective whose surcharges are compiled in
+    protected final Objective objective;
+
+    // Cost of each tile, row major
+    protected final double[] costs;
+
+    /**
+     * Constructor of a layer where every step costs the same.
+     * @param width Width of map
+     * @param height Height of map
+     */
+    public CostLayer(int width, int height) {
+        this(width, height, Objective.BASIC);
+    }
+
+    /**
+     * Constructor.
+     * @param width Width of map
+     * @param height Height of map
+     * @param objective Objective whose surcharges the costs include
+     */
+    protected CostLayer(int width, int height, Objective objective) {
+        this.width = width;
+        this.height = height;
+        this.objective = objective;
+        this.costs = new double[width * height];
+
+        Arrays.fill(costs, COST_FREE);
+    }
+
+    /**
+     * Compiles the terrain of a tile map and an objective into a layer.
+     * @param tileMap Tile map, indexed [y][x]
+     * @param objective Objective to compile in
+     * @return Cost layer
+     */
+    public static CostLayer compile(char[][] tileMap, Objective objective) {
+        int height = tileMap.length;
+        int width = tileMap[0].length;
+
+        CostLayer layer = new CostLayer(width, height, objective);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                layer.costs[y * width + x] = terrain(tileMap[y][x]) + surcharge(tileMap, x, y, objective);
+            }
+        }
+
+        return layer;
+    }
+
+    /**
+     * Compiles an objective into a copy of this layer, keeping its costs
+     * whether they came from terrain or were set by hand.
+     * @param tileMap Tile map the layer is over, indexed [y][x]
+     * @param objective Objective to compile in
+     * @return Cost layer
+     * @throws IllegalArgumentException If this layer already has an
+     * objective compiled in
+     */
+    public CostLayer withObjective(char[][] tileMap, Objective objective) {
+        if (this.objective != Objective.BASIC) {
+            throw new IllegalArgumentException("costs already include " + this.objective);
+        }
+
+        CostLayer layer = new CostLayer(width, height, objective);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                layer.costs[y * width + x] = costs[y * width + x] + surcharge(tileMap, x, y, objective);
+            }
+        }
+
+        return layer;
+    }
+
+    /**
+     * Gets what an objective adds to the cost of stepping onto a tile.
+     */
+    protected static double surcharge(char[][] tileMap, int x, int y, Objective objective) {
+        switch (objective) {
+            case STEALTHY:
+                return hugsWall(tileMap, x, y) ? 0.0 : SURCHARGE_EXPOSED;
+            case PRETTY:
+                return hugsWall(tileMap, x, y) ? SURCHARGE_HUGGING : 0.0;
+            default:
+                return 0.0;
+        }
+    }
+
+    /**
+     * Gets the cost of stepping onto a terrain symbol.
+     * @param sym Tile symbol
+     * @return Cost
+     */
+    public static double terrain(char sym) {
+        switch (sym) {
+            case Astar.SYMBOL_MUD:
+                return COST_MUD;
+            case Astar.SYMBOL_DANGER:
+                return COST_DANGER;
+            default:
+                return COST_FREE;
+        }
+    }
+
+    /**
+     * Determines if a tile has a wall, or the map edge, beside it.
+     */
+    protected static boolean hugsWall(char[][] tileMap, int x, int y) {
+        return isWall(tileMap, x - 1, y)
+                || isWall(tileMap, x + 1, y)
+                || isWall(tileMap, x, y - 1)
+                || isWall(tileMap, x, y + 1);
+    }
+
+    private static boolean isWall(char[][] tileMap, int x, int y) {
+        if (y < 0 || y >= tileMap.length || x < 0 || x >= tileMap[0].length) {
+            return true;
+        }
+
+        return tileMap[y][x] == Astar.SYMBOL_OBSTACLE;
+    }
+
+    /**
+     * Gets the cost of stepping onto a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Cost
+     */
+    public double get(int x, int y) {
+        return costs[y * width + x];
+    }
+
+    /**
+     * Sets the cost of stepping onto a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @param cost Cost, at least one
+     */
+    public void set(int x, int y, double cost) {
+        assert(cost >= COST_FREE);
+
+        costs[y * width + x] = cost;
+    }
+
+    /**
+     * Gets the objective compiled into the costs. Hand-built layers hold
+     * terrain alone, which is BASIC.
+     * @return Objective
+     */
+    public Objective getObjective() {
+        return objective;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.jfr.SearchEvents;
+import astar.jfr.Status;
+import astar.util.Config.Metric;
+
+/**
+ * This class finds the dead ends and swamps of a map: tiles no shortest
+ * path between two other tiles needs. A search may skip them unless the
+ * start or destination is among them.
+ * <p>
+ * Tiles are peeled one at a time. A tile goes when every pair of its
+ * neighbours is joined at least as cheaply around it, through the other
+ * neighbours, as through it. Removing such a tile leaves every distance
+ * between the remaining tiles unchanged, and so does each later removal.
+ * The peeled tiles are then grouped into 8-connected regions. A region
+ * only borders kept tiles, so a search from inside one needs only that
+ * region opened up, plus the destination's.
+ * <p>
+ * Peeled tiles still count as free for the octile rule against cutting
+ * corners. The index holds for one metric and one set of step costs.
+ *
+ * @author Ron Coleman
+ */
+public class DeadEndIndex implements Status {
+    /**
+     * Region of tiles that are kept, and of obstacles.
+     */
+    public final static int KEPT = 0;
+
+    // Slack for comparing sums of diagonal costs
+    private final static double EPSILON = 1e-9;
+
+    protected final char[][] tileMap;
+    protected final int width;
+    protected final int height;
+    protected final Metric metric;
+    protected final double[] raster;
+
+    // Region of each tile, row major
+    protected final int[] regions;
+    protected int regionCount;
+    protected int prunedCount;
+
+    // Scratch for checking one tile: neighbour tiles and costs among them
+    private final int[] ring = new int[8];
+    private final double[][] around = new double[8][8];
+    private final double[] into = new double[8];
+    private final double[] outOf = new double[8];
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]
+     * @param metric Step metric of the searches that will use the index
+     * @param costs Step costs of those searches, or null for unit steps
+     */
+    public DeadEndIndex(char[][] tileMap, Metric metric, CostLayer costs) {
+        this.tileMap = tileMap;
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+        this.metric = metric;
+        this.raster = costs == null ? null : costs.costs;
+        this.regions = new int[width * height];
+
+        build();
+
+        SearchEvents.watch(this);
+    }
+
+    /**
+     * Constructor for unit steps.
+     * @param tileMap Tile map, indexed [y][x]
+     */
+    public DeadEndIndex(char[][] tileMap) {
+        this(tileMap, Metric.UNIT, null);
+    }
+
+    /**
+     * Peels the tiles and labels the regions.
+     */
+    protected final void build() {
+        int cells = width * height;
+
+        boolean[] pruned = new boolean[cells];
+        boolean[] queued = new boolean[cells];
+        int[] queue = new int[cells];
+        int head = 0;
+        int size = 0;
+
+        for (int c = 0; c < cells; c++) {
+            if (!isObstacle(c % width, c / width)) {
+                queue[size++] = c;
+                queued[c] = true;
+            }
+        }
+
+        // Ring queue: a tile is queued at most once at a time
+        while (size > 0) {
+            int c = queue[head];
+
+            head = (head + 1) % cells;
+            size--;
+            queued[c] = false;
+
+            if (!peelable(c, pruned)) {
+                continue;
+            }
+
+            pruned[c] = true;
+            prunedCount++;
+
+            // The neighbours have lost a way around, or a way through
+            int x = c % width;
+            int y = c / width;
+
+            for (int k = 0; k < HeapAstar.DX.length; k++) {
+                int adjX = x + HeapAstar.DX[k];
+                int adjY = y + HeapAstar.DY[k];
+
+                if (!inside(adjX, adjY) || isObstacle(adjX, adjY)) {
+                    continue;
+                }
+
+                int adj = adjY * width + adjX;
+
+                if (!pruned[adj] && !queued[adj]) {
+                    queue[(head + size) % cells] = adj;
+                    size++;
+                    queued[adj] = true;
+                }
+            }
+        }
+
+        label(pruned, queue);
+    }
+
+    /**
+     * Groups the peeled tiles into 8-connected regions.
+     */
+    private void label(boolean[] pruned, int[] queue) {
+        for (int seed = 0; seed < regions.length; seed++) {
+            if (!pruned[seed] || regions[seed] != KEPT) {
+                continue;
+            }
+
+            int region = ++regionCount;
+            int head = 0;
+            int tail = 0;
+
+            regions[seed] = region;
+            queue[tail++] = seed;
+
+            while (head < tail) {
+                int c = queue[head++];
+                int x = c % width;
+                int y = c / width;
+
+                for (int k = 0; k < HeapAstar.DX.length; k++) {
+                    int adjX = x + HeapAstar.DX[k];
+                    int adjY = y + HeapAstar.DY[k];
+
+                    if (!inside(adjX, adjY)) {
+                        continue;
+                    }
+
+                    int adj = adjY * width + adjX;
+
+                    if (pruned[adj] && regions[adj] == KEPT) {
+                        regions[adj] = region;
+                        queue[tail++] = adj;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines whether every pair of a tile's neighbours is joined around
+     * it at no more cost than through it.
+     * @param c Tile, row major
+     * @param pruned Tiles peeled so far
+     * @return True if the tile can go.
+     */
+    protected boolean peelable(int c, boolean[] pruned) {
+        int x = c % width;
+        int y = c / width;
+
+        // Ring slot k holds the neighbour at offset k, or -1
+        for (int k = 0; k < 8; k++) {
+            int adjX = x + HeapAstar.DX[k];
+            int adjY = y + HeapAstar.DY[k];
+
+            if (!inside(adjX, adjY) || isObstacle(adjX, adjY) || pruned[adjY * width + adjX]) {
+                ring[k] = -1;
+                continue;
+            }
+
+            ring[k] = adjY * width + adjX;
+            into[k] = step(adjX, adjY, x, y);
+            outOf[k] = step(x, y, adjX, adjY);
+        }
+
+        // Cheapest costs between neighbours without the tile: Floyd over
+        // at most eight tiles
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                around[i][j] = i == j ? 0 : Double.POSITIVE_INFINITY;
+
+                if (i != j && ring[i] >= 0 && ring[j] >= 0) {
+                    int xi = x + HeapAstar.DX[i];
+                    int yi = y + HeapAstar.DY[i];
+                    int xj = x + HeapAstar.DX[j];
+                    int yj = y + HeapAstar.DY[j];
+
+                    if (Math.abs(xi - xj) <= 1 && Math.abs(yi - yj) <= 1) {
+                        around[i][j] = step(xi, yi, xj, yj);
+                    }
+                }
+            }
+        }
+
+        for (int m = 0; m < 8; m++) {
+            if (ring[m] < 0) {
+                continue;
+            }
+
+            for (int i = 0; i < 8; i++) {
+                for (int j = 0; j < 8; j++) {
+                    double d = around[i][m] + around[m][j];
+
+                    if (d < around[i][j]) {
+                        around[i][j] = d;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                if (i == j || ring[i] < 0 || ring[j] < 0) {
+                    continue;
+                }
+
+                if (around[i][j] > into[i] + outOf[j] + EPSILON) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the cost of a one-tile step as the search would pay it.
+     * @return Cost, infinite if the step cuts a corner the metric forbids
+     */
+    protected double step(int fromX, int fromY, int toX, int toY) {
+        boolean diagonal = fromX != toX && fromY != toY;
+        boolean octile = metric == Metric.OCTILE;
+
+        if (octile && diagonal && (isObstacle(toX, fromY) || isObstacle(fromX, toY))) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double cost = raster == null ? 1 : raster[toY * width + toX];
+
+        return octile && diagonal ? cost * Astar.COST_DIAGONAL : cost;
+    }
+
+    /**
+     * Gets the region of a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Region, or KEPT if the tile is kept or an obstacle.
+     */
+    public int getRegion(int x, int y) {
+        return regions[y * width + x];
+    }
+
+    /**
+     * Gets the region of a tile.
+     * @param cell Tile, row major
+     * @return Region, or KEPT if the tile is kept or an obstacle.
+     */
+    public int getRegion(long cell) {
+        return regions[(int) cell];
+    }
+
+    /**
+     * Determines whether searches may skip a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return True if the tile was peeled.
+     */
+    public boolean isPruned(int x, int y) {
+        return regions[y * width + x] != KEPT;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    public int getPrunedCount() {
+        return prunedCount;
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public String getStatusName() {
+        return "dead-ends";
+    }
+
+    @Override
+    public long getStatusEntries() {
+        return prunedCount;
+    }
+
+    @Override
+    public long getStatusBytes() {
+        return 4L * regions.length;
+    }
+
+    protected boolean inside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    protected boolean isObstacle(int x, int y) {
+        return tileMap[y][x] == Astar.SYMBOL_OBSTACLE;
+    }
+}
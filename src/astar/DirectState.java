@@ -0,0 +1,262 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Search state kept off the Java heap in direct buffers so that very large
+ * grids neither hit the array size limit nor make the collector trace
+ * billions of entries.
+ * <p>
+ * Memory comes in slabs allocated the first time a cell in them is written,
+ * so a search only pays for the part of the grid it touches. Each cell is a
+ * 32 byte record of g, f, parent and slot.
+ * <p>
+ * Java can't free a direct buffer on demand; the memory goes back only
+ * once the collector finds the buffer unreachable, which may be long after
+ * a search ends. Allocating fresh slabs for every query could therefore
+ * run into -XX:MaxDirectMemorySize. Instead a closed state zeroes the
+ * slabs it used and waits for the next {@link #acquire(long)} on the same
+ * thread, so each thread holds the slabs of its largest recent search and
+ * no more.
+ *
+ * @author Ron Coleman
+ */
+public class DirectState implements SearchState {
+    // Largest slab, 128 MB
+    public final static int MAX_SLAB_SHIFT = 27;
+
+    private final static int RECORD_SHIFT = 5;
+    private final static int G = 0;
+    private final static int F = 8;
+    private final static int PARENT = 16;
+    private final static int SLOT = 24;
+
+    // Each thread's closed state, waiting to be reused
+    private final static ThreadLocal<DirectState> spare = new ThreadLocal<>();
+
+    // Zeroes copied over used slabs
+    private final static ByteBuffer ZEROS = ByteBuffer.allocateDirect(1 << 16).asReadOnlyBuffer();
+
+    protected final long cells;
+    protected Slabs records;
+    protected Slabs heap;
+
+    protected boolean closed;
+
+    /**
+     * Gets a state with room for a number of cells, reusing the thread's
+     * last closed one if it is big enough.
+     * @param cells Number of cells
+     * @return State, every value zero
+     */
+    public static DirectState acquire(long cells) {
+        DirectState state = spare.get();
+
+        if (state != null && state.cells >= cells) {
+            spare.remove();
+            state.closed = false;
+
+            return state;
+        }
+
+        return new DirectState(cells);
+    }
+
+    /**
+     * Constructor.
+     * @param cells Number of cells
+     */
+    public DirectState(long cells) {
+        this.cells = cells;
+
+        records = new Slabs(cells << RECORD_SHIFT);
+        heap = new Slabs(cells << 3);
+    }
+
+    @Override
+    public double getG(long cell) {
+        return records.getDouble((cell << RECORD_SHIFT) + G);
+    }
+
+    @Override
+    public void setG(long cell, double g) {
+        records.putDouble((cell << RECORD_SHIFT) + G, g);
+    }
+
+    @Override
+    public double getF(long cell) {
+        return records.getDouble((cell << RECORD_SHIFT) + F);
+    }
+
+    @Override
+    public void setF(long cell, double f) {
+        records.putDouble((cell << RECORD_SHIFT) + F, f);
+    }
+
+    @Override
+    public long getParent(long cell) {
+        return records.getLong((cell << RECORD_SHIFT) + PARENT);
+    }
+
+    @Override
+    public void setParent(long cell, long parent) {
+        records.putLong((cell << RECORD_SHIFT) + PARENT, parent);
+    }
+
+    @Override
+    public long getSlot(long cell) {
+        return records.getLong((cell << RECORD_SHIFT) + SLOT);
+    }
+
+    @Override
+    public void setSlot(long cell, long slot) {
+        records.putLong((cell << RECORD_SHIFT) + SLOT, slot);
+    }
+
+    @Override
+    public long getHeap(long pos) {
+        return heap.getLong(pos << 3);
+    }
+
+    @Override
+    public void setHeap(long pos, long cell) {
+        heap.putLong(pos << 3, cell);
+    }
+
+    /**
+     * Gets the number of bytes allocated so far.
+     * @return Bytes
+     */
+    public long getAllocated() {
+        return records.allocated + heap.allocated;
+    }
+
+    /**
+     * Zeroes the slabs and offers the state, slabs and all, for reuse. If
+     * the thread already keeps a bigger state this one is dropped, and its
+     * memory returns whenever the collector gets to it.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        records.clear();
+        heap.clear();
+
+        closed = true;
+
+        DirectState last = spare.get();
+
+        if (last == null || last.cells <= cells) {
+            spare.set(this);
+        }
+    }
+
+    /**
+     * Byte-addressed memory made of lazily allocated direct buffers.
+     */
+    protected static class Slabs {
+        final int shift;
+        final long mask;
+        final ByteBuffer[] slabs;
+        long allocated;
+
+        // Slabs written since the last clear
+        final boolean[] dirty;
+
+        Slabs(long bytes) {
+            // Small states get a single slab just big enough
+            int s = 64 - Long.numberOfLeadingZeros(Math.max(8, bytes) - 1);
+
+            shift = Math.min(s, MAX_SLAB_SHIFT);
+            mask = (1L << shift) - 1;
+            slabs = new ByteBuffer[(int) ((bytes + mask) >>> shift)];
+            dirty = new boolean[slabs.length];
+        }
+
+        long getLong(long offset) {
+            ByteBuffer slab = slabs[(int) (offset >>> shift)];
+
+            return slab == null ? 0 : slab.getLong((int) (offset & mask));
+        }
+
+        double getDouble(long offset) {
+            ByteBuffer slab = slabs[(int) (offset >>> shift)];
+
+            return slab == null ? 0 : slab.getDouble((int) (offset & mask));
+        }
+
+        void putLong(long offset, long value) {
+            slab(offset).putLong((int) (offset & mask), value);
+        }
+
+        void putDouble(long offset, double value) {
+            slab(offset).putDouble((int) (offset & mask), value);
+        }
+
+        /**
+         * Zeroes the slabs written since the last clear, keeping them
+         * allocated.
+         */
+        void clear() {
+            for (int k = 0; k < slabs.length; k++) {
+                if (!dirty[k]) {
+                    continue;
+                }
+
+                ByteBuffer slab = slabs[k];
+                dirty[k] = false;
+
+                slab.clear();
+
+                while (slab.hasRemaining()) {
+                    ByteBuffer zeros = ZEROS.duplicate();
+                    zeros.limit(Math.min(zeros.capacity(), slab.remaining()));
+
+                    slab.put(zeros);
+                }
+
+                slab.clear();
+            }
+        }
+
+        ByteBuffer slab(long offset) {
+            int index = (int) (offset >>> shift);
+
+            ByteBuffer slab = slabs[index];
+
+            if (slab == null) {
+                // Direct buffers come zeroed, matching the unwritten state
+                slab = ByteBuffer.allocateDirect(1 << shift).order(ByteOrder.nativeOrder());
+                slabs[index] = slab;
+                allocated += 1 << shift;
+            }
+
+            dirty[index] = true;
+
+            return slab;
+        }
+    }
+}
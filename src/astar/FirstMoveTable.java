@@ -0,0 +1,316 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.jfr.SearchEvents;
+import astar.jfr.Status;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A compressed path database for a static map: for every free tile, the
+ * first step of a shortest path to every other tile. A path is answered by
+ * looking up the first step, taking it, and looking up again from there,
+ * with no search at all.
+ * <p>
+ * Steps are the same as Astar's unit moves. The first steps from one tile
+ * run through the targets in row-major order and are stored as runs of the
+ * same direction. Obstacles and unreachable targets match any direction, so
+ * they never start a run. Each source is a breadth-first search, and the
+ * sources are shared out among a pool of threads.
+ * <p>
+ * The table takes time and memory that grow with the square of the free
+ * tiles, so it suits small and medium maps queried many times.
+ *
+ * @author Ron Coleman
+ */
+public class FirstMoveTable implements Status {
+    protected final char[][] tileMap;
+    protected final int width;
+    protected final int height;
+    protected final ComponentIndex components;
+
+    // Runs of each source, row major: (first target << 3) | direction
+    protected final int[][] rows;
+
+    /**
+     * Scratch of one building thread.
+     */
+    protected class Builder {
+        final int[] queue = new int[width * height];
+        final int[] stamps = new int[width * height];
+        final byte[] first = new byte[width * height];
+        int[] runs = new int[64];
+        int stamp;
+
+        /**
+         * Builds the runs of one source.
+         */
+        int[] build(int source) {
+            stamp++;
+
+            int head = 0;
+            int tail = 0;
+
+            stamps[source] = stamp;
+            queue[tail++] = source;
+
+            while (head < tail) {
+                int cur = queue[head++];
+                int x = cur % width;
+                int y = cur / width;
+
+                for (int k = 0; k < HeapAstar.DX.length; k++) {
+                    int adjX = x + HeapAstar.DX[k];
+                    int adjY = y + HeapAstar.DY[k];
+
+                    if (adjX < 0 || adjX >= width || adjY < 0 || adjY >= height) {
+                        continue;
+                    }
+
+                    int adj = adjY * width + adjX;
+
+                    if (stamps[adj] == stamp || tileMap[adjY][adjX] == Astar.SYMBOL_OBSTACLE) {
+                        continue;
+                    }
+
+                    // Tiles next to the source start their own first step,
+                    // the rest inherit the step of the tile they came from
+                    stamps[adj] = stamp;
+                    first[adj] = cur == source ? (byte) k : first[cur];
+                    queue[tail++] = adj;
+                }
+            }
+
+            int count = 0;
+            int last = -1;
+
+            for (int target = 0; target < stamps.length; target++) {
+                if (stamps[target] != stamp || target == source || first[target] == last) {
+                    continue;
+                }
+
+                if (count == runs.length) {
+                    runs = Arrays.copyOf(runs, count * 2);
+                }
+
+                // The first run also covers the targets before it
+                int start = count == 0 ? 0 : target;
+
+                runs[count++] = start << 3 | first[target];
+                last = first[target];
+            }
+
+            return Arrays.copyOf(runs, count);
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]; must not change afterwards
+     * @param threads Number of threads building the table
+     * @throws InterruptedException If interrupted while building
+     * @throws IllegalArgumentException If the map has 2^28 tiles or more
+     */
+    public FirstMoveTable(char[][] tileMap, int threads) throws InterruptedException {
+        this.tileMap = tileMap;
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+
+        // Targets share an int with a direction
+        if ((long) width * height >= 1 << 28) {
+            throw new IllegalArgumentException("map too big for a first-move table");
+        }
+
+        this.components = new ComponentIndex(tileMap);
+        this.rows = new int[width * height][];
+
+        build(threads);
+
+        SearchEvents.watch(this);
+    }
+
+    /**
+     * Constructor with a thread per core.
+     * @param tileMap Tile map, indexed [y][x]; must not change afterwards
+     * @throws InterruptedException If interrupted while building
+     */
+    public FirstMoveTable(char[][] tileMap) throws InterruptedException {
+        this(tileMap, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds the runs of every free source.
+     */
+    protected final void build(int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    Builder builder = new Builder();
+
+                    for (int source = next.getAndIncrement(); source < rows.length; source = next.getAndIncrement()) {
+                        if (tileMap[source / width][source % width] != Astar.SYMBOL_OBSTACLE) {
+                            rows[source] = builder.build(source);
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("first-move table failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Gets the first step of a shortest path.
+     * @param source From tile, row major
+     * @param target To tile, row major; reachable and not the source
+     * @return Direction, an index into Astar's offsets
+     */
+    public int getFirstMove(int source, int target) {
+        int[] runs = rows[source];
+
+        // Last run starting at or before the target
+        int lo = 0;
+        int hi = runs.length - 1;
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if (runs[mid] >>> 3 <= target) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return runs[lo] & 7;
+    }
+
+    /**
+     * Finds a shortest path by following first steps.
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     * @return Path, or null if there is none.
+     */
+    public CompactPath findCompact(int startX, int startY, int destX, int destY) {
+        if (!components.connected(startX, startY, destX, destY)) {
+            return null;
+        }
+
+        int target = destY * width + destX;
+
+        // Count the steps first so the path is packed in one go
+        int steps = 0;
+        for (int c = startY * width + startX; c != target; c = step(c, getFirstMove(c, target))) {
+            if (++steps > rows.length) {
+                throw new IllegalStateException("first moves loop from " + startX + "," + startY);
+            }
+        }
+
+        byte[] moves = new byte[CompactPath.bytes(steps)];
+
+        int k = 0;
+        for (int c = startY * width + startX; c != target; ) {
+            int dir = getFirstMove(c, target);
+
+            CompactPath.pack(moves, k++, dir);
+            c = step(c, dir);
+        }
+
+        return new CompactPath(startX, startY, steps, moves, steps);
+    }
+
+    /**
+     * Finds a shortest path by following first steps.
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     * @return Destination node, or null if there is no path.
+     */
+    public Node find(int startX, int startY, int destX, int destY) {
+        CompactPath path = findCompact(startX, startY, destX, destY);
+
+        return path == null ? null : path.toNodes();
+    }
+
+    private int step(int cell, int dir) {
+        return cell + HeapAstar.DY[dir] * width + HeapAstar.DX[dir];
+    }
+
+    /**
+     * Gets the number of runs over all sources.
+     * @return Runs
+     */
+    public long getRunCount() {
+        long count = 0;
+
+        for (int[] runs : rows) {
+            count += runs == null ? 0 : runs.length;
+        }
+
+        return count;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String getStatusName() {
+        return "first-moves";
+    }
+
+    @Override
+    public long getStatusEntries() {
+        return getRunCount();
+    }
+
+    @Override
+    public long getStatusBytes() {
+        // Each row also costs an array header
+        return 4 * getRunCount() + 16L * rows.length;
+    }
+}
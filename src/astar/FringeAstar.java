@@ -0,0 +1,235 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.Astar.Outcome;
+import astar.util.Config.Heuristic;
+import astar.util.Config.Metric;
+import astar.util.SearchOptions;
+import astar.world.World;
+import java.util.Arrays;
+
+/**
+ * Fringe search: A* without a priority queue. Cells wait on a now list and
+ * are expanded in list order while their f is within a threshold; the rest
+ * move to a later list. When the now list runs out the later list becomes
+ * the new now list and the threshold rises to the smallest f deferred.
+ * <p>
+ * g, f and parents live in the same cell-indexed {@link SearchState} as
+ * HeapAstar's, so a cell reached again by a shorter route is updated in
+ * place and listed again rather than searched for. With an admissible
+ * heuristic paths are as short as HeapAstar's, though expansion counts
+ * differ.
+ *
+ * @author Ron Coleman
+ */
+public class FringeAstar extends HeapAstar {
+    // Slot of a cell waiting on the now or later list
+    protected final static long LISTED = 1;
+
+    protected long[] now = new long[1024];
+    protected int nowSize;
+    protected long[] later = new long[1024];
+    protected int laterSize;
+
+    /**
+     * Constructor.
+     * @param world World
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     */
+    public FringeAstar(World world, int startX, int startY, int destX, int destY) {
+        super(world, startX, startY, destX, destY);
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     */
+    public FringeAstar(char[][] tileMap, int startX, int startY, int destX, int destY) {
+        super(tileMap, startX, startY, destX, destY);
+    }
+
+    @Override
+    protected long search(SearchState state, SearchOptions options) {
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+        outcome = Outcome.NO_PATH;
+        nowSize = 0;
+        laterSize = 0;
+
+        Heuristic heuristic = options.heuristic;
+        double[] raster = costs == null ? null : costs.costs;
+        boolean octile = options.metric == Metric.OCTILE;
+
+        long start = cell(startX, startY);
+
+        openRegions(options);
+
+        state.setParent(start, -1);
+        state.setF(start, estimate(heuristic, startX, startY));
+        state.setSlot(start, LISTED);
+        addNow(start);
+
+        double threshold = state.getF(start);
+        double deferred = Double.POSITIVE_INFINITY;
+
+        while (true) {
+            if (nowSize == 0) {
+                if (laterSize == 0) {
+                    return -1;
+                }
+
+                nextRound();
+
+                threshold = deferred;
+                deferred = Double.POSITIVE_INFINITY;
+            }
+
+            long cur = now[--nowSize];
+
+            // Expanded since it was listed, by way of a shorter route
+            if (state.getSlot(cur) != LISTED) {
+                continue;
+            }
+
+            double f = state.getF(cur);
+
+            if (f > threshold) {
+                addLater(cur);
+                deferred = Math.min(deferred, f);
+                continue;
+            }
+
+            if (reach(cur)) {
+                outcome = Outcome.FOUND;
+                return cur;
+            }
+
+            expansions++;
+
+            // Checking the clock is not free so only do it now and then
+            if ((expansions & 0xFF) == 0 && options.expired()) {
+                outcome = Outcome.DEADLINE;
+                return -1;
+            }
+
+            state.setSlot(cur, SearchState.CLOSED);
+
+            int x = (int) (cur % width);
+            int y = (int) (cur / width);
+            double g = state.getG(cur);
+
+            for (int k = 0; k < DX.length; k++) {
+                int adjX = x + DX[k];
+                int adjY = y + DY[k];
+
+                if (adjX < 0 || adjX >= width || adjY < 0 || adjY >= height) {
+                    continue;
+                }
+
+                if (world.getTile(adjX, adjY) == Astar.SYMBOL_OBSTACLE) {
+                    continue;
+                }
+
+                // Odd offsets are diagonal; octile moves may not cut corners
+                boolean diagonal = (k & 1) != 0;
+
+                if (octile && diagonal && (blocked(adjX, y) || blocked(x, adjY))) {
+                    continue;
+                }
+
+                long adj = cell(adjX, adjY);
+
+                if (skipped(adj)) {
+                    continue;
+                }
+
+                long slot = state.getSlot(adj);
+
+                double step = raster == null ? 1 : raster[(int) adj];
+                double adjG = g + (octile && diagonal ? step * Astar.COST_DIAGONAL : step);
+
+                // Seen before by a route at least as short; unlike A*,
+                // expanded cells are listed again when a shorter route turns up
+                if (slot != 0 && adjG >= state.getG(adj)) {
+                    continue;
+                }
+
+                if (slot == 0 && ++generated > options.limit) {
+                    outcome = Outcome.LIMIT;
+                    return -1;
+                }
+
+                state.setG(adj, adjG);
+                state.setParent(adj, cur);
+                state.setF(adj, adjG + estimate(heuristic, adjX, adjY));
+                state.setSlot(adj, LISTED);
+
+                // Children go to the front so they are looked at next
+                addNow(adj);
+            }
+        }
+    }
+
+    /**
+     * Makes the later list the now list, keeping its order.
+     */
+    protected void nextRound() {
+        long[] list = now;
+
+        now = later;
+        nowSize = laterSize;
+        later = list;
+        laterSize = 0;
+
+        // The now list is taken from the end
+        for (int i = 0, j = nowSize - 1; i < j; i++, j--) {
+            long c = now[i];
+            now[i] = now[j];
+            now[j] = c;
+        }
+    }
+
+    protected void addNow(long cell) {
+        if (nowSize == now.length) {
+            now = Arrays.copyOf(now, now.length * 2);
+        }
+
+        now[nowSize++] = cell;
+
+        openPeak = Math.max(openPeak, nowSize + laterSize);
+    }
+
+    protected void addLater(long cell) {
+        if (laterSize == later.length) {
+            later = Arrays.copyOf(later, later.length * 2);
+        }
+
+        later[laterSize++] = cell;
+    }
+}
@@ -0,0 +1,634 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.Astar.Outcome;
+import astar.util.Config.Engine;
+import astar.util.Config.Heuristic;
+import astar.util.Config.Metric;
+import astar.util.SearchOptions;
+import astar.world.ArrayWorld;
+import astar.world.World;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A* over cell indices with a binary heap for the open list. The per-cell
+ * state lives in a {@link SearchState}, on the Java heap for the HEAP engine
+ * or in direct memory for the OFF_HEAP engine.
+ * <p>
+ * Moves and step counts are the same as Astar's, or octile steps without
+ * corner cutting under {@link Metric#OCTILE}. The PRETTY and STEALTHY
+ * objectives apply only through a compiled {@link CostLayer}, and any-angle
+ * paths are not supported.
+ *
+ * @author Ron Coleman
+ */
+public class HeapAstar {
+    // Offsets in the same order as Astar's
+    final static int[] DX = {-1, -1, 0, 1, 1, 1, 0, -1};
+    final static int[] DY = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    protected final World world;
+    protected final int width;
+    protected final int height;
+    protected final int startX;
+    protected final int startY;
+    protected final int destX;
+    protected final int destY;
+
+    protected CostLayer costs;
+    protected DeadEndIndex pruning;
+
+    // Exact step distances to the destination, row major; null to estimate
+    protected int[] distanceField;
+
+    // Peeled regions the current search may enter; null if none are skipped
+    protected int[] openRegions;
+
+    // Destinations of a multi-goal search, sorted cells; null for one
+    protected long[] goals;
+    protected int[] goalX;
+    protected int[] goalY;
+
+    // Goals reached so far by a multi-goal search, nearest first
+    protected long[] reached;
+    protected int reachedCount;
+
+    // Statistics of the last search
+    protected long expansions;
+    protected long generated;
+    protected long openPeak;
+    protected Outcome outcome;
+
+    private long heapSize;
+
+    /**
+     * Constructor.
+     * @param world World
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     */
+    public HeapAstar(World world, int startX, int startY, int destX, int destY) {
+        this.world = world;
+        this.width = world.getWidth();
+        this.height = world.getHeight();
+        this.startX = startX;
+        this.startY = startY;
+        this.destX = destX;
+        this.destY = destY;
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     */
+    public HeapAstar(char[][] tileMap, int startX, int startY, int destX, int destY) {
+        this(new ArrayWorld(tileMap), startX, startY, destX, destY);
+    }
+
+    /**
+     * Sets the step costs.
+     * @param costs Cost layer over this world, or null for unit steps
+     */
+    public void setCosts(CostLayer costs) {
+        this.costs = costs;
+    }
+
+    /**
+     * Sets the dead ends to skip. They are only skipped when the search
+     * uses the metric the index was built for.
+     * @param pruning Index over this world and costs, or null to skip none
+     */
+    public void setPruning(DeadEndIndex pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Sets exact step distances to the destination to use instead of the
+     * heuristic. A multi-goal search ignores them.
+     * @param distanceField Distances over this world, see
+     * {@link Wavefront#distances(int, int)}, or null to estimate
+     */
+    public void setDistanceField(int[] distanceField) {
+        this.distanceField = distanceField;
+    }
+
+    /**
+     * Finds a path from start to destination.
+     * @param options Search options
+     * @return Destination node if path found, null if no path found or the
+     * node limit or deadline was reached.
+     */
+    public Node find(SearchOptions options) {
+        try (SearchState state = newState(options)) {
+            long goal = search(state, options);
+
+            return goal < 0 ? null : toNodes(state, goal);
+        }
+    }
+
+    /**
+     * Finds a path from start to destination as directions, without
+     * building nodes.
+     * @param options Search options
+     * @return Path, or null if no path found or the node limit or deadline
+     * was reached.
+     */
+    public CompactPath findCompact(SearchOptions options) {
+        try (SearchState state = newState(options)) {
+            long goal = search(state, options);
+
+            return goal < 0 ? null : toCompact(state, goal);
+        }
+    }
+
+    /**
+     * Finds the nearest of several destinations in one search. The
+     * heuristic is the smallest estimate to any destination, so it stays
+     * admissible when the estimate is, and destinations are reached in
+     * order of distance. The destination given to the constructor is
+     * ignored.
+     * @param goalX Destination X coordinates
+     * @param goalY Destination Y coordinates
+     * @param k Most destinations to find
+     * @param options Search options
+     * @return Destination nodes of the paths to the k nearest reachable
+     * destinations, nearest first.
+     */
+    public List<Node> findNearest(int[] goalX, int[] goalY, int k, SearchOptions options) {
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.goals = new long[goalX.length];
+
+        for (int n = 0; n < goals.length; n++) {
+            goals[n] = cell(goalX[n], goalY[n]);
+        }
+
+        // Duplicate destinations are one tile
+        Arrays.sort(goals);
+        goals = Arrays.copyOf(goals, unique(goals));
+
+        reached = new long[Math.min(k, goals.length)];
+        reachedCount = 0;
+
+        List<Node> paths = new ArrayList<>();
+
+        try (SearchState state = newState(options)) {
+            if (reached.length > 0) {
+                search(state, options);
+            }
+
+            for (int n = 0; n < reachedCount; n++) {
+                paths.add(toNodes(state, reached[n]));
+            }
+        } finally {
+            this.goals = null;
+            this.goalX = null;
+            this.goalY = null;
+        }
+
+        if (!paths.isEmpty() && outcome == Outcome.NO_PATH) {
+            outcome = Outcome.FOUND;
+        }
+
+        return paths;
+    }
+
+    /**
+     * Creates the state for one search.
+     * @param options Search options
+     * @return Search state
+     */
+    protected SearchState newState(SearchOptions options) {
+        long cells = (long) width * height;
+
+        return options.engine == Engine.OFF_HEAP ? DirectState.acquire(cells) : ArrayState.acquire(cells);
+    }
+
+    /**
+     * Runs the search.
+     * @param state Fresh search state
+     * @param options Search options
+     * @return Destination cell, or -1 if not reached.
+     */
+    protected long search(SearchState state, SearchOptions options) {
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+        heapSize = 0;
+        outcome = Outcome.NO_PATH;
+
+        Heuristic heuristic = options.heuristic;
+        double[] raster = costs == null ? null : costs.costs;
+        boolean octile = options.metric == Metric.OCTILE;
+
+        long start = cell(startX, startY);
+
+        openRegions(options);
+
+        state.setParent(start, -1);
+        state.setF(start, estimate(heuristic, startX, startY));
+        push(state, start);
+
+        while (heapSize > 0) {
+            long cur = pop(state);
+
+            if (reach(cur)) {
+                outcome = Outcome.FOUND;
+                return cur;
+            }
+
+            expansions++;
+
+            // Checking the clock is not free so only do it now and then
+            if ((expansions & 0xFF) == 0 && options.expired()) {
+                outcome = Outcome.DEADLINE;
+                return -1;
+            }
+
+            int x = (int) (cur % width);
+            int y = (int) (cur / width);
+            double g = state.getG(cur);
+
+            for (int k = 0; k < DX.length; k++) {
+                int adjX = x + DX[k];
+                int adjY = y + DY[k];
+
+                if (adjX < 0 || adjX >= width || adjY < 0 || adjY >= height) {
+                    continue;
+                }
+
+                if (world.getTile(adjX, adjY) == Astar.SYMBOL_OBSTACLE) {
+                    continue;
+                }
+
+                // Odd offsets are diagonal; octile moves may not cut corners
+                boolean diagonal = (k & 1) != 0;
+
+                if (octile && diagonal && (blocked(adjX, y) || blocked(x, adjY))) {
+                    continue;
+                }
+
+                long adj = cell(adjX, adjY);
+                long slot = state.getSlot(adj);
+
+                if (slot == SearchState.CLOSED || skipped(adj)) {
+                    continue;
+                }
+
+                double step = raster == null ? 1 : raster[(int) adj];
+                double adjG = g + (octile && diagonal ? step * Astar.COST_DIAGONAL : step);
+
+                // Already open by a route at least as short
+                if (slot != 0 && adjG >= state.getG(adj)) {
+                    continue;
+                }
+
+                state.setG(adj, adjG);
+                state.setParent(adj, cur);
+                state.setF(adj, adjG + estimate(heuristic, adjX, adjY));
+
+                if (slot == 0) {
+                    if (++generated > options.limit) {
+                        outcome = Outcome.LIMIT;
+                        return -1;
+                    }
+
+                    push(state, adj);
+                } else {
+                    siftUp(state, slot - 1);
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Builds the linked path of nodes ending at a cell.
+     * @param state Search state
+     * @param goal Destination cell
+     * @return Destination node
+     */
+    protected Node toNodes(SearchState state, long goal) {
+        int steps = 0;
+
+        for (long c = goal; c >= 0; c = state.getParent(c)) {
+            steps++;
+        }
+
+        long[] cells = new long[steps];
+
+        long c = goal;
+        for (int k = steps - 1; k >= 0; k--) {
+            cells[k] = c;
+            c = state.getParent(c);
+        }
+
+        Node node = null;
+
+        for (int k = 0; k < steps; k++) {
+            Node next = new Node((int) (cells[k] % width), (int) (cells[k] / width));
+            next.setDistance(state.getG(cells[k]));
+
+            if (node != null) {
+                next.setParent(node);
+                node.setChild(next);
+            }
+
+            node = next;
+        }
+
+        return node;
+    }
+
+    /**
+     * Estimates the cost from a tile to the destination, or to the nearest
+     * destination of a multi-goal search.
+     */
+    protected double estimate(Heuristic heuristic, int x, int y) {
+        if (goals == null && distanceField != null) {
+            int steps = distanceField[y * width + x];
+
+            return steps == Wavefront.UNREACHED ? Double.POSITIVE_INFINITY : steps;
+        }
+
+        if (goals == null) {
+            return Astar.estimate(heuristic, x - destX, y - destY);
+        }
+
+        double h = Double.POSITIVE_INFINITY;
+
+        for (int n = 0; n < goalX.length; n++) {
+            h = Math.min(h, Astar.estimate(heuristic, x - goalX[n], y - goalY[n]));
+        }
+
+        return h;
+    }
+
+    /**
+     * Determines whether the search stops at a cell just popped. A
+     * multi-goal search records each destination and stops once it has
+     * enough of them. Fringe search may pop a destination again after
+     * finding a shorter way to it; it is only recorded the first time.
+     */
+    protected boolean reach(long cell) {
+        if (goals == null) {
+            return cell == cell(destX, destY);
+        }
+
+        if (Arrays.binarySearch(goals, cell) < 0) {
+            return false;
+        }
+
+        // At most k destinations, so a scan is cheap
+        for (int n = 0; n < reachedCount; n++) {
+            if (reached[n] == cell) {
+                return false;
+            }
+        }
+
+        reached[reachedCount++] = cell;
+
+        return reachedCount == reached.length;
+    }
+
+    /**
+     * Works out which peeled regions the search may enter: those holding
+     * the start or a destination.
+     * @param options Search options
+     */
+    protected void openRegions(SearchOptions options) {
+        openRegions = null;
+
+        if (pruning == null || pruning.getMetric() != options.metric) {
+            return;
+        }
+
+        int count = goals == null ? 1 : goals.length;
+
+        openRegions = new int[count + 1];
+        openRegions[0] = pruning.getRegion(startX, startY);
+
+        for (int n = 0; n < count; n++) {
+            openRegions[n + 1] = goals == null ? pruning.getRegion(destX, destY) : pruning.getRegion(goals[n]);
+        }
+    }
+
+    /**
+     * Determines whether the search skips a cell as a dead end.
+     */
+    protected boolean skipped(long cell) {
+        if (openRegions == null) {
+            return false;
+        }
+
+        int region = pruning.getRegion(cell);
+
+        if (region == DeadEndIndex.KEPT) {
+            return false;
+        }
+
+        for (int open : openRegions) {
+            if (open == region) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int unique(long[] sorted) {
+        int n = 0;
+
+        for (int k = 0; k < sorted.length; k++) {
+            if (k == 0 || sorted[k] != sorted[k - 1]) {
+                sorted[n++] = sorted[k];
+            }
+        }
+
+        return n;
+    }
+
+    protected boolean blocked(int x, int y) {
+        return world.getTile(x, y) == Astar.SYMBOL_OBSTACLE;
+    }
+
+    /**
+     * Packs the path ending at a cell straight from the parent links.
+     * @param state Search state
+     * @param goal Destination cell
+     * @return Path
+     */
+    protected CompactPath toCompact(SearchState state, long goal) {
+        int steps = 0;
+
+        for (long c = goal; state.getParent(c) >= 0; c = state.getParent(c)) {
+            steps++;
+        }
+
+        byte[] moves = new byte[CompactPath.bytes(steps)];
+
+        // Parent links run backwards so fill from the last step
+        long c = goal;
+        for (int k = steps - 1; k >= 0; k--) {
+            long parent = state.getParent(c);
+            int dx = (int) (c % width - parent % width);
+            int dy = (int) (c / width - parent / width);
+
+            CompactPath.pack(moves, k, CompactPath.direction(dx, dy));
+            c = parent;
+        }
+
+        return new CompactPath((int) (c % width), (int) (c / width), steps, moves, state.getG(goal));
+    }
+
+    protected long cell(int x, int y) {
+        return (long) y * width + x;
+    }
+
+    /**
+     * Orders cells by f, breaking ties toward the larger g which is nearer
+     * the destination.
+     */
+    protected boolean before(SearchState state, long a, long b) {
+        double fa = state.getF(a);
+        double fb = state.getF(b);
+
+        return fa < fb || (fa == fb && state.getG(a) > state.getG(b));
+    }
+
+    protected void push(SearchState state, long cell) {
+        long pos = heapSize++;
+
+        state.setHeap(pos, cell);
+        state.setSlot(cell, pos + 1);
+
+        siftUp(state, pos);
+
+        openPeak = Math.max(openPeak, heapSize);
+    }
+
+    protected long pop(SearchState state) {
+        long top = state.getHeap(0);
+        long last = state.getHeap(--heapSize);
+
+        state.setSlot(top, SearchState.CLOSED);
+
+        if (heapSize > 0) {
+            state.setHeap(0, last);
+            state.setSlot(last, 1);
+            siftDown(state, 0);
+        }
+
+        return top;
+    }
+
+    protected void siftUp(SearchState state, long pos) {
+        long cell = state.getHeap(pos);
+
+        while (pos > 0) {
+            long up = (pos - 1) >>> 1;
+            long parent = state.getHeap(up);
+
+            if (!before(state, cell, parent)) {
+                break;
+            }
+
+            state.setHeap(pos, parent);
+            state.setSlot(parent, pos + 1);
+            pos = up;
+        }
+
+        state.setHeap(pos, cell);
+        state.setSlot(cell, pos + 1);
+    }
+
+    protected void siftDown(SearchState state, long pos) {
+        long cell = state.getHeap(pos);
+
+        while (true) {
+            long child = 2 * pos + 1;
+
+            if (child >= heapSize) {
+                break;
+            }
+
+            long right = child + 1;
+
+            if (right < heapSize && before(state, state.getHeap(right), state.getHeap(child))) {
+                child = right;
+            }
+
+            long down = state.getHeap(child);
+
+            if (!before(state, down, cell)) {
+                break;
+            }
+
+            state.setHeap(pos, down);
+            state.setSlot(down, pos + 1);
+            pos = child;
+        }
+
+        state.setHeap(pos, cell);
+        state.setSlot(cell, pos + 1);
+    }
+
+    /**
+     * Gets the number of nodes expanded by the last search.
+     * @return Expansions
+     */
+    public long getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * Gets the number of nodes generated by the last search.
+     * @return Generated nodes
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Gets the largest size of the open list during the last search.
+     * @return Open list peak
+     */
+    public long getOpenPeak() {
+        return openPeak;
+    }
+
+    /**
+     * Gets how the last search ended.
+     * @return Outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+}
@@ -19,6 +19,9 @@
  */
 package astar;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Random;
 
 /**
@@ -111,28 +114,24 @@ public class LevelGenerator {
    */
   @Override
   public String toString() {
+    StringWriter sw = new StringWriter();
     
-    StringBuilder sb = new StringBuilder();
-    
-    // Print the header row
-    sb.append("  ");
-    
-    for(int w=0; w < width; w++)
-        sb.append(encode(w)).append(" ");
-    sb.append("\n");
-    
-    // Print each cell of the map by rows
-    for(int h=0; h < height; h++) {
-      sb.append(encode(h)).append(" ");
-      
-      // print the colums of each row
-      for(int w=0; w < width; w++) {
-        sb.append(tileMap[w][h]).append(" ");
-      }
-      sb.append("\n");
+    try {
+      render(sw);
+    } catch (IOException e) {
+      // A string writer does not throw
     }
     
-    return sb.toString();
+    return sw.toString();
+  }
+  
+  /**
+   * Streams the level to a writer a row at a time.
+   * @param out Writer, flushed but not closed
+   * @throws IOException If the writer fails
+   */
+  public void render(Writer out) throws IOException {
+    MapRenderer.render(tileMap, out);
   }
   
   public void layout(int startX,int startY) {
@@ -219,7 +218,7 @@ public class LevelGenerator {
     int numBarriers = (int) (width * height * BARRIER_FACTOR + 0.5);
     
     for(int i=0; i < numBarriers; i++) {
-      int x = ran.nextInt(height);
+      int x = ran.nextInt(width);
       int y = ran.nextInt(height);
       
       if(x == startX && y == startY)
@@ -233,11 +232,10 @@ public class LevelGenerator {
   }     
   
   public static char encode(int index) {
-    final String encode = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    final String encode = MapRenderer.DIGITS;
     
     assert(index >= 0 && index < encode.length());
     
     return encode.charAt(index);
   }
 }
-
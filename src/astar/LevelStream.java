@@ -0,0 +1,394 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.world.ChunkedWorld;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random worlds a row at a time, for worlds too big to hold in
+ * memory. Only one row, or one band of chunk rows for the binary format,
+ * is held at once.
+ * <p>
+ * Each row draws from its own generator seeded by a hash of the world seed
+ * and the row, so any row can be regenerated on its own and the same seed
+ * always gives the same world. The hash matters: seeds that differ by a
+ * constant leave the first draws of java.util.Random correlated, which
+ * showed up as one column far denser or sparser than the rest.
+ * <p>
+ * Obstacles are as dense as {@link LevelGenerator}'s on average, though not
+ * the same tiles.
+ * <p>
+ * Usage: <code>LevelStream -width w -height h [-seed seed]
+ * [-format text|chunked] [-chunk size] -out path</code>
+ * <p>
+ * With <code>-format check</code> nothing is written; the world is
+ * generated and the program exits with status 2 unless every column's
+ * obstacle density is {@link #isFlat flat}.
+ *
+ * @author Ron Coleman
+ */
+public class LevelStream {
+    public final static String FORMAT_TEXT = "text";
+    public final static String FORMAT_CHUNKED = "chunked";
+    public final static String FORMAT_CHECK = "check";
+
+    // Standard errors a column's density may stray from the expected one
+    public final static double FLAT_ERRORS = 5.0;
+
+    // Tries at placing the destination before giving up on a world
+    private final static int TRIES = 1000;
+
+    protected final int width;
+    protected final int height;
+    protected final long seed;
+
+    // Chance in 65536 that a tile is an obstacle
+    protected final int threshold;
+
+    protected int startX;
+    protected int startY;
+    protected int destX;
+    protected int destY;
+
+    /**
+     * Constructor.
+     * @param width Width in tiles
+     * @param height Height in tiles
+     * @param seed Random seed
+     * @throws IllegalArgumentException If the world is too small for a start
+     * and destination apart from each other
+     */
+    public LevelStream(int width, int height, long seed) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+
+        // LevelGenerator drops width * height * BARRIER_FACTOR obstacles at
+        // random, some on the same tile, which leaves this fraction blocked
+        this.threshold = (int) ((1 - Math.exp(-LevelGenerator.BARRIER_FACTOR)) * 65536);
+
+        layoutEnds();
+    }
+
+    /**
+     * Places the start and destination by LevelGenerator's rules.
+     */
+    protected void layoutEnds() {
+        Random ran = new Random(seed);
+
+        int inset = LevelGenerator.INSET;
+        int minXDist = (int) (0.25 * width);
+        int minYDist = (int) (0.25 * height);
+
+        if (width <= 2 * inset + 1 || height <= 2 * inset + 1) {
+            throw new IllegalArgumentException("world too small: " + width + "x" + height);
+        }
+
+        startX = inset + 1 + ran.nextInt(width - 2 * inset - 1);
+        startY = inset + 1 + ran.nextInt(height - 2 * inset - 1);
+
+        for (int k = 0; k < TRIES; k++) {
+            destX = inset + 1 + ran.nextInt(width - 2 * inset - 1);
+            destY = inset + 1 + ran.nextInt(height - 2 * inset - 1);
+
+            if (Math.abs(destX - startX) > minXDist && Math.abs(destY - startY) > minYDist) {
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException("no room for a destination in " + width + "x" + height);
+    }
+
+    /**
+     * Generates one row.
+     * @param y Row
+     * @param row Tiles of the row, at least width long
+     */
+    public void row(int y, char[] row) {
+        SplittableRandom ran = new SplittableRandom(mix(seed ^ mix(y)));
+
+        // Four 16-bit draws per long
+        long bits = 0;
+
+        for (int x = 0; x < width; x++) {
+            if ((x & 3) == 0) {
+                bits = ran.nextLong();
+            }
+
+            row[x] = (int) (bits & 0xFFFF) < threshold ? Astar.SYMBOL_OBSTACLE : Astar.SYMBOL_FREE;
+            bits >>>= 16;
+        }
+
+        if (y == startY) {
+            row[startX] = Astar.SYMBOL_START;
+        }
+
+        if (y == destY) {
+            row[destX] = Astar.SYMBOL_DEST;
+        }
+    }
+
+    /**
+     * Scrambles a value with the splitmix64 finalizer, so nearby inputs give
+     * unrelated outputs.
+     * @param z Value
+     * @return Scrambled value
+     */
+    protected static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Gets the fraction of each column that is obstacles, over every row.
+     * @return Density by column
+     */
+    public double[] columnDensity() {
+        int[] counts = new int[width];
+        char[] row = new char[width];
+
+        for (int y = 0; y < height; y++) {
+            row(y, row);
+
+            for (int x = 0; x < width; x++) {
+                if (row[x] == Astar.SYMBOL_OBSTACLE) {
+                    counts[x]++;
+                }
+            }
+        }
+
+        double[] density = new double[width];
+
+        for (int x = 0; x < width; x++) {
+            density[x] = counts[x] / (double) height;
+        }
+
+        return density;
+    }
+
+    /**
+     * Tests if every column is about as dense as expected, that is, within
+     * {@link #FLAT_ERRORS} standard errors of the obstacle chance.
+     * @param density Density by column, from {@link #columnDensity()}
+     * @return True if no column stands out
+     */
+    public boolean isFlat(double[] density) {
+        double p = threshold / 65536.0;
+        double error = Math.sqrt(p * (1 - p) / height);
+
+        for (double d : density) {
+            if (Math.abs(d - p) > FLAT_ERRORS * error) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the world in the text format {@link Astar#loadMap()} reads.
+     * @param out Writer, flushed but not closed
+     * @throws IOException If the writer fails
+     */
+    public void writeText(Writer out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(out);
+
+        writer.write(width + " " + height + "\n");
+
+        char[] row = new char[width];
+
+        for (int y = 0; y < height; y++) {
+            row(y, row);
+
+            writer.write(row);
+            writer.write('\n');
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes the world in the file format of {@link ChunkedWorld}, one band
+     * of chunk rows at a time.
+     * @param out Stream, flushed but not closed
+     * @param chunk Chunk width and height in tiles
+     * @throws IOException If the stream fails
+     */
+    public void writeChunked(OutputStream out, int chunk) throws IOException {
+        BufferedOutputStream stream = new BufferedOutputStream(out, 1 << 16);
+
+        ByteBuffer header = ByteBuffer.allocate(ChunkedWorld.HEADER_SIZE);
+        header.putInt(ChunkedWorld.MAGIC).putInt(ChunkedWorld.VERSION).putInt(width).putInt(height).putInt(chunk);
+
+        stream.write(header.array());
+
+        int chunksX = (width + chunk - 1) / chunk;
+        int chunksY = (height + chunk - 1) / chunk;
+
+        // One band: chunk rows, padded out to whole chunks
+        int stride = chunksX * chunk;
+        byte[] band = new byte[chunk * stride];
+        char[] row = new char[width];
+
+        for (int cy = 0; cy < chunksY; cy++) {
+            Arrays.fill(band, (byte) 0);
+
+            for (int r = 0; r < chunk && cy * chunk + r < height; r++) {
+                row(cy * chunk + r, row);
+
+                for (int x = 0; x < width; x++) {
+                    band[r * stride + x] = ChunkedWorld.encode(row[x]);
+                }
+            }
+
+            // Each chunk's rows are contiguous in the file
+            for (int cx = 0; cx < chunksX; cx++) {
+                for (int r = 0; r < chunk; r++) {
+                    stream.write(band, r * stride + cx * chunk, chunk);
+                }
+            }
+        }
+
+        stream.flush();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    public int getDestX() {
+        return destX;
+    }
+
+    public int getDestY() {
+        return destY;
+    }
+
+    /**
+     * Main method.
+     * @param args Command line arguments, see class comment
+     * @throws IOException If the file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        int width = 0;
+        int height = 0;
+        long seed = 0;
+        String format = FORMAT_TEXT;
+        int chunk = ChunkedWorld.DEFAULT_CHUNK;
+        String path = null;
+
+        // Every option takes a value
+        if (args.length % 2 != 0) {
+            System.err.println("no value for option " + args[args.length - 1]);
+            System.exit(1);
+        }
+
+        for (int k = 0; k + 1 < args.length; k += 2) {
+            String value = args[k + 1];
+
+            switch (args[k]) {
+                case "-width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "-height":
+                    height = Integer.parseInt(value);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "-format":
+                    format = value.toLowerCase();
+                    break;
+                case "-chunk":
+                    chunk = Integer.parseInt(value);
+                    break;
+                case "-out":
+                    path = value;
+                    break;
+                default:
+                    System.err.println("bad option " + args[k]);
+                    System.exit(1);
+            }
+        }
+
+        if (path == null && !format.equals(FORMAT_CHECK)) {
+            System.err.println("no output file, use -out path");
+            System.exit(1);
+        }
+
+        LevelStream level = new LevelStream(width, height, seed);
+
+        if (format.equals(FORMAT_CHECK)) {
+            double[] density = level.columnDensity();
+
+            double min = 1;
+            double max = 0;
+
+            for (double d : density) {
+                min = Math.min(min, d);
+                max = Math.max(max, d);
+            }
+
+            boolean flat = level.isFlat(density);
+
+            System.out.printf("seed %d column density %.4f..%.4f %s%n",
+                    seed, min, max, flat ? "flat" : "NOT FLAT");
+
+            System.exit(flat ? 0 : 2);
+        } else if (format.equals(FORMAT_CHUNKED)) {
+            try (OutputStream out = new FileOutputStream(path)) {
+                level.writeChunked(out, chunk);
+            }
+        } else {
+            try (Writer out = new FileWriter(path)) {
+                level.writeText(out);
+            }
+        }
+
+        System.out.println("start " + level.getStartX() + " " + level.getStartY()
+                + " dest " + level.getDestX() + " " + level.getDestY());
+    }
+}
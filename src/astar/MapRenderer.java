@@ -0,0 +1,184 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This class streams maps and paths to a writer a row at a time so memory
+ * stays bounded regardless of the map size.
+ * <p>
+ * Indices are written in base 62. Maps up to 62 cells wide look exactly as
+ * they always have; wider maps get one header row per digit, most
+ * significant first.
+ *
+ * @author Ron Coleman
+ */
+public class MapRenderer {
+    public final static String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    public final static int RADIX = DIGITS.length();
+
+    /**
+     * Gets the number of base 62 digits needed to label count indices.
+     * @param count Number of indices
+     * @return Digits, at least one
+     */
+    public static int digits(int count) {
+        int digits = 1;
+
+        for (long n = RADIX; n < count; n *= RADIX) {
+            digits++;
+        }
+
+        return digits;
+    }
+
+    /**
+     * Encodes an index in base 62 without padding.
+     * @param index Non-negative index
+     * @return Encoded index
+     */
+    public static String encode(int index) {
+        return encode(index, 1);
+    }
+
+    /**
+     * Encodes an index in base 62, left padded with zeros.
+     * @param index Non-negative index
+     * @param digits Minimum number of digits
+     * @return Encoded index
+     */
+    public static String encode(int index, int digits) {
+        assert(index >= 0);
+
+        char[] buf = new char[Math.max(digits, digits(index + 1))];
+
+        for (int k = buf.length - 1; k >= 0; k--) {
+            buf[k] = DIGITS.charAt(index % RADIX);
+            index /= RADIX;
+        }
+
+        return new String(buf);
+    }
+
+    /**
+     * Gets one digit of an index.
+     * @param index Non-negative index
+     * @param place Digit place, zero being least significant
+     * @return Digit
+     */
+    protected static char digit(int index, int place) {
+        for (int k = 0; k < place; k++) {
+            index /= RADIX;
+        }
+
+        return DIGITS.charAt(index % RADIX);
+    }
+
+    /**
+     * Writes the map with row and column labels. Rows are the first index of
+     * the tile map, columns the second.
+     * @param tileMap Tile map
+     * @param out Writer, flushed but not closed
+     * @throws IOException If the writer fails
+     */
+    public static void render(char[][] tileMap, Writer out) throws IOException {
+        int height = tileMap.length;
+        int width = height == 0 ? 0 : tileMap[0].length;
+
+        int colDigits = digits(width);
+        int rowDigits = digits(height);
+
+        BufferedWriter writer = new BufferedWriter(out);
+
+        // Print the header rows, one per digit of the column index
+        for (int place = colDigits - 1; place >= 0; place--) {
+            pad(writer, rowDigits + 1);
+
+            for (int w = 0; w < width; w++) {
+                writer.write(digit(w, place));
+                writer.write(' ');
+            }
+            writer.write('\n');
+        }
+
+        // Print each cell of the map by rows
+        for (int h = 0; h < height; h++) {
+            writer.write(encode(h, rowDigits));
+            writer.write(' ');
+
+            char[] row = tileMap[h];
+
+            for (int w = 0; w < width; w++) {
+                writer.write(row[w]);
+                writer.write(' ');
+            }
+            writer.write('\n');
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes the map to a channel as UTF-8.
+     * @param tileMap Tile map
+     * @param channel Channel, not closed
+     * @throws IOException If the channel fails
+     */
+    public static void render(char[][] tileMap, WritableByteChannel channel) throws IOException {
+        render(tileMap, Channels.newWriter(channel, "UTF-8"));
+    }
+
+    /**
+     * Writes a path from its end back to the start.
+     * @param node Last node of the path
+     * @param out Writer, flushed but not closed
+     * @throws IOException If the writer fails
+     */
+    public static void render(Node node, Writer out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(out);
+
+        do {
+            writer.write('[');
+            writer.write(encode(node.getX()));
+            writer.write(',');
+            writer.write(encode(node.getY()));
+            writer.write(']');
+
+            if (node.getParent() != null) {
+                writer.write(" <- ");
+            }
+
+            node = node.getParent();
+        } while (node != null);
+
+        writer.flush();
+    }
+
+    private static void pad(Writer writer, int count) throws IOException {
+        for (int k = 0; k < count; k++) {
+            writer.write(' ');
+        }
+    }
+}
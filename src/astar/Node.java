@@ -19,6 +19,9 @@
  */
 package astar;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 /**
  * This class implements the node in A* pathfinding.
  * @author Ron Coleman
@@ -38,6 +41,7 @@ public class Node {
     private int steps = 0;
     private int id;
     private double inertia;
+    private double distance;
 
     /**
      * Constructor.
@@ -185,20 +189,15 @@ public class Node {
      */
     @Override
     public String toString() {
-        
-        StringBuilder sb = new StringBuilder();
-        Node node = this;
+        StringWriter sw = new StringWriter();
 
-        do {
-            sb.append("[").append(LevelGenerator.encode(node.getX())).append(",").append(LevelGenerator.encode(node.getY())).append("]");
-            
-            if(node.getParent() != null)
-                sb.append(" <- ");
+        try {
+            MapRenderer.render(this, sw);
+        } catch (IOException e) {
+            // A string writer does not throw
+        }
 
-            node = node.getParent();
-        } while (node != null);
-        
-        return sb.toString();
+        return sw.toString();
     }
 
     public Node getChild() {
@@ -253,6 +252,22 @@ public class Node {
         this.inertia = strength;
     }
 
+    /**
+     * Gets the distance travelled from the start along the parents.
+     * @return Double
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Sets the distance travelled from the start.
+     * @param distance Distance
+     */
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
     /**
      * Increments the inertia.
      */
@@ -0,0 +1,667 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.Astar.Outcome;
+import astar.util.Config.Metric;
+import astar.util.SearchOptions;
+import astar.world.ArrayWorld;
+import astar.world.World;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hash-distributed A* for one large query on many cores. Each cell belongs
+ * to one worker, chosen by hashing the small block it lies in. A worker
+ * expands only cells it owns and sends the others it generates to their
+ * owners in batches over lock-free queues.
+ * <p>
+ * The first path found is only an incumbent: workers keep expanding
+ * anything that could still beat it. The search ends when no worker has
+ * open cells and no batch is in flight, tracked by one counter of busy
+ * workers plus unread batches. Moves and costs are the same as
+ * {@link HeapAstar}'s.
+ *
+ * @author Ron Coleman
+ */
+public class ParallelAstar {
+    // Cells in a 2^BLOCK_SHIFT square block share an owner
+    public final static int BLOCK_SHIFT = 3;
+
+    // Cells sent to one worker at a time
+    public final static int BATCH_SIZE = 64;
+
+    // Expansions between flushes of part-filled batches and clock checks
+    private final static int FLUSH_INTERVAL = 0xFF;
+
+    protected final World world;
+    protected final int width;
+    protected final int height;
+    protected final int startX;
+    protected final int startY;
+    protected final int destX;
+    protected final int destY;
+    protected final int threads;
+
+    protected CostLayer costs;
+
+    // Exact step distances to the destination, row major; null to estimate
+    protected int[] distanceField;
+
+    // Shared per-cell state; each cell is only written by its owner
+    protected double[] g;
+    protected int[] parents;
+
+    // Busy workers plus batches sent but not yet read
+    protected final AtomicLong pending = new AtomicLong();
+    protected final AtomicLong generatedTotal = new AtomicLong();
+
+    // Cost of the best path so far, written only by the owner of the goal
+    protected volatile double incumbent;
+    protected volatile boolean done;
+    protected volatile Outcome abort;
+
+    // What stopped a worker that failed, rethrown by find
+    protected volatile Throwable failure;
+
+    protected Worker[] workers;
+
+    // Statistics of the last search
+    protected long expansions;
+    protected long generated;
+    protected long openPeak;
+    protected Outcome outcome;
+
+    /**
+     * Constructor.
+     * @param world World
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     * @param threads Number of worker threads
+     */
+    public ParallelAstar(World world, int startX, int startY, int destX, int destY, int threads) {
+        this.world = world;
+        this.width = world.getWidth();
+        this.height = world.getHeight();
+        this.startX = startX;
+        this.startY = startY;
+        this.destX = destX;
+        this.destY = destY;
+        this.threads = Math.max(1, threads);
+
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many cells: " + (long) width * height);
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     * @param threads Number of worker threads
+     */
+    public ParallelAstar(char[][] tileMap, int startX, int startY, int destX, int destY, int threads) {
+        this(new ArrayWorld(tileMap), startX, startY, destX, destY, threads);
+    }
+
+    /**
+     * Sets the step costs.
+     * @param costs Cost layer over this world, or null for unit steps
+     */
+    public void setCosts(CostLayer costs) {
+        this.costs = costs;
+    }
+
+    /**
+     * Sets exact step distances to the destination to use instead of the
+     * heuristic.
+     * @param distanceField Distances over this world, see
+     * {@link Wavefront#distances(int, int)}, or null to estimate
+     */
+    public void setDistanceField(int[] distanceField) {
+        this.distanceField = distanceField;
+    }
+
+    /**
+     * Finds a path from start to destination.
+     * @param options Search options
+     * @return Destination node if path found, null if no path found or the
+     * node limit or deadline was reached.
+     */
+    public Node find(SearchOptions options) {
+        g = new double[width * height];
+        parents = new int[width * height];
+
+        pending.set(1);
+        generatedTotal.set(0);
+        incumbent = Double.POSITIVE_INFINITY;
+        done = false;
+        abort = null;
+        failure = null;
+
+        CyclicBarrier ready = new CyclicBarrier(threads);
+
+        workers = new Worker[threads];
+        Thread[] running = new Thread[threads];
+
+        for (int k = 0; k < threads; k++) {
+            workers[k] = new Worker(k, options, ready);
+        }
+
+        for (int k = 0; k < threads; k++) {
+            running[k] = new Thread(workers[k], "astar-parallel-" + k);
+            running[k].start();
+        }
+
+        try {
+            for (Thread t : running) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            done = true;
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) {
+            g = null;
+            parents = null;
+            workers = null;
+
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+
+            throw new IllegalStateException("search worker failed", failure);
+        }
+
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+
+        for (Worker w : workers) {
+            expansions += w.expansions;
+            generated += w.generated;
+            openPeak += w.openPeak;
+        }
+
+        int goal = destY * width + destX;
+
+        if (abort != null) {
+            outcome = abort;
+        } else if (incumbent < Double.POSITIVE_INFINITY) {
+            outcome = Outcome.FOUND;
+        } else {
+            outcome = Outcome.NO_PATH;
+        }
+
+        Node path = outcome == Outcome.FOUND ? toNodes(goal) : null;
+
+        g = null;
+        parents = null;
+        workers = null;
+
+        return path;
+    }
+
+    /**
+     * Builds the linked path of nodes ending at a cell.
+     * @param goal Destination cell
+     * @return Destination node
+     */
+    protected Node toNodes(int goal) {
+        int steps = 0;
+
+        for (int c = goal; c >= 0; c = parents[c]) {
+            steps++;
+        }
+
+        int[] cells = new int[steps];
+
+        int c = goal;
+        for (int k = steps - 1; k >= 0; k--) {
+            cells[k] = c;
+            c = parents[c];
+        }
+
+        Node node = null;
+
+        for (int k = 0; k < steps; k++) {
+            Node next = new Node(cells[k] % width, cells[k] / width);
+            next.setDistance(g[cells[k]]);
+
+            if (node != null) {
+                next.setParent(node);
+                node.setChild(next);
+            }
+
+            node = next;
+        }
+
+        return node;
+    }
+
+    /**
+     * Gets the worker that owns a cell.
+     */
+    protected int owner(int x, int y) {
+        long block = ((long) (y >> BLOCK_SHIFT) << 32) | (x >> BLOCK_SHIFT);
+
+        return (int) (((block * 0x9E3779B97F4A7C15L) >>> 33) % threads);
+    }
+
+    /**
+     * Cells sent from one worker to another.
+     */
+    protected static class Batch {
+        final int[] cells = new int[BATCH_SIZE];
+        final int[] parents = new int[BATCH_SIZE];
+        final double[] g = new double[BATCH_SIZE];
+        int size;
+    }
+
+    /**
+     * One search thread with its own open list and inbox.
+     */
+    protected class Worker implements Runnable {
+        final int id;
+        final SearchOptions options;
+        final CyclicBarrier ready;
+        final ConcurrentLinkedQueue<Batch> inbox = new ConcurrentLinkedQueue<>();
+        final Batch[] outbox = new Batch[threads];
+
+        // Binary heap of open cells; stale entries are skipped when popped
+        int[] heapCells = new int[1024];
+        double[] heapF = new double[1024];
+        double[] heapG = new double[1024];
+        int heapSize;
+
+        boolean idle;
+
+        long expansions;
+        long generated;
+        long openPeak;
+        long reported;
+
+        Worker(int id, SearchOptions options, CyclicBarrier ready) {
+            this.id = id;
+            this.options = options;
+            this.ready = ready;
+
+            // Only the start's owner begins busy, matching the counter
+            this.idle = owner(startX, startY) != id;
+        }
+
+        @Override
+        public void run() {
+            try {
+                search();
+            } catch (Throwable t) {
+                // The others would wait on this worker forever
+                failure = t;
+                done = true;
+                ready.reset();
+            }
+        }
+
+        /**
+         * Searches until every worker is idle or the search is stopped.
+         */
+        void search() {
+            // Clear this worker's share of the shared state in parallel
+            int cells = g.length;
+            int from = (int) ((long) cells * id / threads);
+            int to = (int) ((long) cells * (id + 1) / threads);
+
+            Arrays.fill(g, from, to, Double.POSITIVE_INFINITY);
+
+            try {
+                ready.await();
+            } catch (Exception e) {
+                done = true;
+                return;
+            }
+
+            if (!idle) {
+                relax(startY * width + startX, 0, -1);
+            }
+
+            while (!done) {
+                receive();
+
+                if (heapSize > 0) {
+                    expand();
+                    continue;
+                }
+
+                flush();
+
+                if (!idle) {
+                    idle = true;
+
+                    if (pending.decrementAndGet() == 0) {
+                        done = true;
+                    }
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Takes in the batches sent to this worker.
+         */
+        void receive() {
+            Batch batch;
+
+            while ((batch = inbox.poll()) != null) {
+                // An idle worker takes over the batch's count as its own
+                if (idle) {
+                    idle = false;
+                } else {
+                    pending.decrementAndGet();
+                }
+
+                for (int k = 0; k < batch.size; k++) {
+                    relax(batch.cells[k], batch.g[k], batch.parents[k]);
+                }
+            }
+        }
+
+        /**
+         * Expands the best open cell.
+         */
+        void expand() {
+            double f = heapF[0];
+            double curG = heapG[0];
+            int cur = pop();
+
+            // Superseded by a shorter route since it was pushed
+            if (curG > g[cur]) {
+                return;
+            }
+
+            // Nothing left here can beat the incumbent
+            if (f >= incumbent) {
+                heapSize = 0;
+                return;
+            }
+
+            expansions++;
+
+            if ((expansions & FLUSH_INTERVAL) == 0) {
+                flush();
+                check();
+            }
+
+            double[] raster = costs == null ? null : costs.costs;
+            boolean octile = options.metric == Metric.OCTILE;
+            int x = cur % width;
+            int y = cur / width;
+
+            for (int k = 0; k < HeapAstar.DX.length; k++) {
+                int adjX = x + HeapAstar.DX[k];
+                int adjY = y + HeapAstar.DY[k];
+
+                if (adjX < 0 || adjX >= width || adjY < 0 || adjY >= height) {
+                    continue;
+                }
+
+                if (world.getTile(adjX, adjY) == Astar.SYMBOL_OBSTACLE) {
+                    continue;
+                }
+
+                boolean diagonal = (k & 1) != 0;
+
+                if (octile && diagonal && (world.getTile(adjX, y) == Astar.SYMBOL_OBSTACLE
+                        || world.getTile(x, adjY) == Astar.SYMBOL_OBSTACLE)) {
+                    continue;
+                }
+
+                int adj = adjY * width + adjX;
+                double step = raster == null ? 1 : raster[adj];
+                double adjG = curG + (octile && diagonal ? step * Astar.COST_DIAGONAL : step);
+                int to = owner(adjX, adjY);
+
+                if (to == id) {
+                    relax(adj, adjG, cur);
+                } else {
+                    send(to, adj, adjG, cur);
+                }
+            }
+        }
+
+        /**
+         * Offers a route to a cell this worker owns.
+         */
+        void relax(int cell, double cellG, int parent) {
+            if (cellG >= g[cell]) {
+                return;
+            }
+
+            g[cell] = cellG;
+            parents[cell] = parent;
+            generated++;
+
+            int x = cell % width;
+            int y = cell / width;
+
+            if (x == destX && y == destY) {
+                if (cellG < incumbent) {
+                    incumbent = cellG;
+                }
+                return;
+            }
+
+            double h;
+
+            if (distanceField == null) {
+                h = Astar.estimate(options.heuristic, x - destX, y - destY);
+            } else if (distanceField[cell] == Wavefront.UNREACHED) {
+                return;
+            } else {
+                h = distanceField[cell];
+            }
+
+            double f = cellG + h;
+
+            if (f < incumbent) {
+                push(cell, f, cellG);
+            }
+        }
+
+        void send(int to, int cell, double cellG, int parent) {
+            Batch batch = outbox[to];
+
+            if (batch == null) {
+                batch = outbox[to] = new Batch();
+            }
+
+            batch.cells[batch.size] = cell;
+            batch.parents[batch.size] = parent;
+            batch.g[batch.size] = cellG;
+
+            if (++batch.size == BATCH_SIZE) {
+                post(to);
+            }
+        }
+
+        /**
+         * Sends every part-filled batch.
+         */
+        void flush() {
+            for (int to = 0; to < threads; to++) {
+                if (outbox[to] != null && outbox[to].size > 0) {
+                    post(to);
+                }
+            }
+        }
+
+        void post(int to) {
+            // Counted before it is visible so the count never drops early
+            pending.incrementAndGet();
+
+            workers[to].inbox.add(outbox[to]);
+            outbox[to] = null;
+        }
+
+        /**
+         * Stops every worker on the node limit or the deadline.
+         */
+        void check() {
+            long total = generatedTotal.addAndGet(generated - reported);
+            reported = generated;
+
+            if (total > options.limit) {
+                abort = Outcome.LIMIT;
+                done = true;
+            } else if (options.expired()) {
+                abort = Outcome.DEADLINE;
+                done = true;
+            }
+        }
+
+        /**
+         * Orders heap entries by f, breaking ties toward the larger g.
+         */
+        boolean before(int a, int b) {
+            return heapF[a] < heapF[b] || (heapF[a] == heapF[b] && heapG[a] > heapG[b]);
+        }
+
+        void push(int cell, double f, double cellG) {
+            if (heapSize == heapCells.length) {
+                int n = heapSize * 2;
+                heapCells = Arrays.copyOf(heapCells, n);
+                heapF = Arrays.copyOf(heapF, n);
+                heapG = Arrays.copyOf(heapG, n);
+            }
+
+            int pos = heapSize++;
+
+            heapCells[pos] = cell;
+            heapF[pos] = f;
+            heapG[pos] = cellG;
+
+            while (pos > 0) {
+                int up = (pos - 1) >>> 1;
+
+                if (!before(pos, up)) {
+                    break;
+                }
+
+                swap(pos, up);
+                pos = up;
+            }
+
+            openPeak = Math.max(openPeak, heapSize);
+        }
+
+        int pop() {
+            int top = heapCells[0];
+
+            heapSize--;
+
+            if (heapSize > 0) {
+                heapCells[0] = heapCells[heapSize];
+                heapF[0] = heapF[heapSize];
+                heapG[0] = heapG[heapSize];
+
+                int pos = 0;
+
+                while (true) {
+                    int child = 2 * pos + 1;
+
+                    if (child >= heapSize) {
+                        break;
+                    }
+
+                    if (child + 1 < heapSize && before(child + 1, child)) {
+                        child++;
+                    }
+
+                    if (!before(child, pos)) {
+                        break;
+                    }
+
+                    swap(pos, child);
+                    pos = child;
+                }
+            }
+
+            return top;
+        }
+
+        void swap(int a, int b) {
+            int cell = heapCells[a];
+            heapCells[a] = heapCells[b];
+            heapCells[b] = cell;
+
+            double f = heapF[a];
+            heapF[a] = heapF[b];
+            heapF[b] = f;
+
+            double cellG = heapG[a];
+            heapG[a] = heapG[b];
+            heapG[b] = cellG;
+        }
+    }
+
+    /**
+     * Gets the number of nodes expanded by the last search, by all workers.
+     * @return Expansions
+     */
+    public long getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * Gets the number of nodes generated by the last search, by all workers.
+     * @return Generated nodes
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Gets the sum of each worker's largest open list in the last search.
+     * @return Open list peak
+     */
+    public long getOpenPeak() {
+        return openPeak;
+    }
+
+    /**
+     * Gets how the last search ended.
+     * @return Outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+}
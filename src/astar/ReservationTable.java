@@ -0,0 +1,151 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which agent holds each cell at each time step, shared by every agent
+ * planning with {@link CooperativeAstar}. Reads and writes are safe from
+ * many threads.
+ *
+ * @author Ron Coleman
+ */
+public class ReservationTable {
+    /**
+     * Owner of a free cell.
+     */
+    public final static int NONE = -1;
+
+    // Agent by (time, cell)
+    protected final ConcurrentHashMap<Long, Integer> owners = new ConcurrentHashMap<>();
+
+    protected static long key(int cell, int time) {
+        return ((long) time << 32) | (cell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the agent holding a cell at a time.
+     * @param cell Cell, row major
+     * @param time Time step
+     * @return Agent, or NONE
+     */
+    public int getOwner(int cell, int time) {
+        Integer agent = owners.get(key(cell, time));
+
+        return agent == null ? NONE : agent;
+    }
+
+    /**
+     * Determines whether an agent may be in a cell at a time.
+     * @param agent Agent
+     * @param cell Cell, row major
+     * @param time Time step
+     * @return True if the cell is free or already the agent's.
+     */
+    public boolean isFree(int agent, int cell, int time) {
+        int owner = getOwner(cell, time);
+
+        return owner == NONE || owner == agent;
+    }
+
+    /**
+     * Determines whether an agent may step between two cells from one time
+     * to the next: the destination must be free and no other agent may be
+     * making the opposite step.
+     * @param agent Agent
+     * @param from From cell
+     * @param to To cell
+     * @param time Time of leaving
+     * @return True if the step is allowed.
+     */
+    public boolean canMove(int agent, int from, int to, int time) {
+        if (!isFree(agent, to, time + 1)) {
+            return false;
+        }
+
+        int other = getOwner(to, time);
+
+        return other == NONE || other == agent || getOwner(from, time + 1) != other;
+    }
+
+    /**
+     * Reserves a cell.
+     * @param agent Agent
+     * @param cell Cell, row major
+     * @param time Time step
+     * @return True if the cell was free or already the agent's.
+     */
+    public boolean reserve(int agent, int cell, int time) {
+        Integer owner = owners.putIfAbsent(key(cell, time), agent);
+
+        return owner == null || owner == agent;
+    }
+
+    /**
+     * Reserves the cells of a plan, one per time step.
+     * @param agent Agent
+     * @param plan Cells, row major
+     * @param start Time of the first cell
+     * @return True if every cell was reserved.
+     */
+    public boolean reserve(int agent, int[] plan, int start) {
+        boolean all = true;
+
+        for (int t = 0; t < plan.length; t++) {
+            all &= reserve(agent, plan[t], start + t);
+        }
+
+        return all;
+    }
+
+    /**
+     * Releases the cells of a plan.
+     * @param agent Agent
+     * @param plan Cells, row major
+     * @param start Time of the first cell
+     */
+    public void release(int agent, int[] plan, int start) {
+        for (int t = 0; t < plan.length; t++) {
+            owners.remove(key(plan[t], start + t), agent);
+        }
+    }
+
+    /**
+     * Drops every reservation before a time.
+     * @param time Time step
+     */
+    public void clearBefore(int time) {
+        for (Iterator<Long> it = owners.keySet().iterator(); it.hasNext();) {
+            if ((int) (it.next() >>> 32) < time) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of reservations.
+     * @return Reservations
+     */
+    public int size() {
+        return owners.size();
+    }
+}
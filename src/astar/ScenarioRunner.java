@@ -0,0 +1,324 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.util.Config;
+import astar.util.Config.Engine;
+import astar.util.Config.Heuristic;
+import astar.util.Config.Metric;
+import astar.util.Config.Objective;
+import astar.util.SearchOptions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.simple.JSONObject;
+
+/**
+ * Runs many seeded worlds across a pool of threads and reports throughput
+ * and latency percentiles.
+ * <p>
+ * Usage: <code>ScenarioRunner [-n scenarios] [-threads count] [-seed seed]
+ * [-width w] [-height h] [-objective basic|pretty|stealthy|anyangle]
+ * [-heuristic euclidean|manhattan|checkers|sse|octile]
+ * [-engine classic|heap|offheap|parallel|fringe|subgoal|cpd] [-metric unit|octile]
+ * [-format csv|json]</code>
+ * <p>
+ * Values are spelled as in the configuration file; the enum names, such
+ * as <code>any_angle</code>, are taken too.
+ *
+ * @author Ron Coleman
+ */
+public class ScenarioRunner {
+    public final static String FORMAT_CSV = "csv";
+    public final static String FORMAT_JSON = "json";
+
+    private final int scenarios;
+    private final int threads;
+    private final long seed;
+    private final int width;
+    private final int height;
+    private final SearchOptions options;
+
+    // Per-query measurements, indexed by scenario
+    private final long[] latencies;
+    private final int[] expansions;
+    private final boolean[] solved;
+
+    private long wallNanos;
+
+    /**
+     * Constructor.
+     * @param scenarios Number of worlds to solve
+     * @param threads Number of worker threads
+     * @param seed Seed of the first world, others use seed + index
+     * @param width Width of each world
+     * @param height Height of each world
+     * @param options Search options shared by every query
+     * @throws IllegalArgumentException If there are no scenarios
+     */
+    public ScenarioRunner(int scenarios, int threads, long seed, int width, int height, SearchOptions options) {
+        if (scenarios < 1) {
+            throw new IllegalArgumentException("need at least one scenario, not " + scenarios);
+        }
+
+        this.scenarios = scenarios;
+        this.threads = threads;
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.options = options;
+
+        this.latencies = new long[scenarios];
+        this.expansions = new int[scenarios];
+        this.solved = new boolean[scenarios];
+    }
+
+    /**
+     * Runs all the scenarios and waits for them to finish.
+     * @throws Exception If a scenario fails
+     */
+    public void run() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < scenarios; i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> {
+                    solve(index);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            wallNanos = System.nanoTime() - start;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Generates and solves one world. Only the search itself is timed.
+     * @param index Scenario index
+     * @throws InterruptedException If interrupted while building an index
+     */
+    protected void solve(int index) throws InterruptedException {
+        LevelGenerator world = new LevelGenerator(width, height, seed + index);
+
+        world.layout();
+
+        Astar astar = new Astar(world.getMap(), world.getStartX(), world.getStartY(), world.getDestX(), world.getDestY());
+
+        // The engines that need an index get one per world, outside the
+        // timed search; the pool already has a thread per worker
+        if (options.engine == Engine.SUBGOAL) {
+            astar.setSubgoals(new SubgoalGraph(world.getMap()));
+        } else if (options.engine == Engine.CPD) {
+            astar.setFirstMoves(new FirstMoveTable(world.getMap(), 1));
+        }
+
+        long start = System.nanoTime();
+
+        Node path = astar.find(options);
+
+        latencies[index] = System.nanoTime() - start;
+        expansions[index] = astar.getExpansions();
+        solved[index] = path != null;
+    }
+
+    /**
+     * Gets the latency at a given percentile using the nearest-rank method.
+     * @param sorted Latencies in ascending order
+     * @param percentile Percentile in (0, 100]
+     * @return Latency in nanoseconds
+     */
+    protected static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * Builds the summary report.
+     * @param format Either csv or json
+     * @return Report
+     */
+    @SuppressWarnings("unchecked")
+    public String report(String format) {
+        long[] sorted = Arrays.copyOf(latencies, latencies.length);
+        Arrays.sort(sorted);
+
+        long totalExpansions = 0;
+        int totalSolved = 0;
+
+        for (int i = 0; i < scenarios; i++) {
+            totalExpansions += expansions[i];
+            if (solved[i]) {
+                totalSolved++;
+            }
+        }
+
+        double seconds = wallNanos / 1e9;
+
+        // Keep the keys in a fixed order so CSV columns are stable
+        String[] keys = {"scenarios", "threads", "width", "height", "objective", "heuristic", "engine", "solved",
+            "expansions", "nodes_per_sec", "queries_per_sec",
+            "p50_us", "p95_us", "p99_us", "max_us"};
+
+        Object[] values = {scenarios, threads, width, height, options.objective.toString().toLowerCase(),
+            options.heuristic.toString().toLowerCase(), options.engine.toString().toLowerCase(), totalSolved,
+            totalExpansions, totalExpansions / seconds, scenarios / seconds,
+            percentile(sorted, 50) / 1e3, percentile(sorted, 95) / 1e3,
+            percentile(sorted, 99) / 1e3, sorted[sorted.length - 1] / 1e3};
+
+        if (format.equals(FORMAT_JSON)) {
+            JSONObject json = new JSONObject();
+
+            for (int k = 0; k < keys.length; k++) {
+                json.put(keys[k], values[k]);
+            }
+
+            return json.toJSONString();
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int k = 0; k < keys.length; k++) {
+            sb.append(k == 0 ? "" : ",").append(keys[k]);
+        }
+        sb.append("\n");
+
+        for (int k = 0; k < values.length; k++) {
+            sb.append(k == 0 ? "" : ",").append(values[k]);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Looks up an option value, spelled with or without underscores, and
+     * exits if there is no such value.
+     * @param type Enum of the values
+     * @param option Option name, for the message
+     * @param value Value
+     * @return Enum constant
+     */
+    protected static <E extends Enum<E>> E parse(Class<E> type, String option, String value) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().replace("_", "").equalsIgnoreCase(value.replace("_", ""))) {
+                return constant;
+            }
+        }
+
+        System.err.println("bad value " + value + " for " + option);
+        System.exit(1);
+
+        return null;
+    }
+
+    /**
+     * Main method.
+     * @param args Command line arguments, see class comment
+     * @throws Exception If a scenario fails
+     */
+    public static void main(String[] args) throws Exception {
+        // Defaults come from the configuration file
+        Config config = Config.getInstance();
+
+        int scenarios = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 0;
+        int width = config.map.width;
+        int height = config.map.height;
+        SearchOptions options = config.getDefaults();
+        String format = FORMAT_CSV;
+
+        // Every option takes a value
+        if (args.length % 2 != 0) {
+            System.err.println("no value for option " + args[args.length - 1]);
+            System.exit(1);
+        }
+
+        for (int k = 0; k + 1 < args.length; k += 2) {
+            String value = args[k + 1];
+
+            switch (args[k]) {
+                case "-n":
+                    scenarios = Integer.parseInt(value);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "-width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "-height":
+                    height = Integer.parseInt(value);
+                    break;
+                case "-objective":
+                    options = options.withObjective(parse(Objective.class, args[k], value));
+                    break;
+                case "-heuristic":
+                    options = options.withHeuristic(parse(Heuristic.class, args[k], value));
+                    break;
+                case "-engine":
+                    options = options.withEngine(parse(Engine.class, args[k], value));
+                    break;
+                case "-metric":
+                    options = options.withMetric(parse(Metric.class, args[k], value));
+                    break;
+                case "-format":
+                    format = value.toLowerCase();
+
+                    if (!format.equals(FORMAT_CSV) && !format.equals(FORMAT_JSON)) {
+                        System.err.println("bad format " + value + ", use csv or json");
+                        System.exit(1);
+                    }
+                    break;
+                default:
+                    System.err.println("bad option " + args[k]);
+                    System.exit(1);
+            }
+        }
+
+        if (scenarios < 1) {
+            System.err.println("-n must be at least 1");
+            System.exit(1);
+        }
+
+        ScenarioRunner runner = new ScenarioRunner(scenarios, threads, seed, width, height, options);
+
+        runner.run();
+
+        System.out.println(runner.report(format));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+/**
+ * Per-cell bookkeeping of a {@link HeapAstar} search: g and f values,
+ * parent cells, and the open-list heap. Cells are long so the state can
+ * outgrow Java's array limit.
+ * <p>
+ * Every value reads as zero until written, so a cell's slot is zero until
+ * it is generated.
+ *
+ * @author Ron Coleman
+ */
+public interface SearchState extends AutoCloseable {
+    /**
+     * Slot of a cell that has been expanded.
+     */
+    public final static long CLOSED = -1;
+
+    public double getG(long cell);
+
+    public void setG(long cell, double g);
+
+    public double getF(long cell);
+
+    public void setF(long cell, double f);
+
+    public long getParent(long cell);
+
+    public void setParent(long cell, long parent);
+
+    /**
+     * Gets where a cell is: zero if never generated, CLOSED if expanded, or
+     * its heap position plus one while on the open list.
+     * @param cell Cell
+     * @return Slot
+     */
+    public long getSlot(long cell);
+
+    public void setSlot(long cell, long slot);
+
+    /**
+     * Gets the cell at a heap position.
+     * @param pos Heap position
+     * @return Cell
+     */
+    public long getHeap(long pos);
+
+    public void setHeap(long pos, long cell);
+
+    /**
+     * Releases the state. It must not be used afterwards.
+     */
+    @Override
+    public void close();
+}
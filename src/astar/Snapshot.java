@@ -0,0 +1,391 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class saves the structures precomputed over a map so a later run
+ * can memory-map them instead of building them again.
+ * <p>
+ * The file is a 32 byte header (magic, version, map hash, width, height,
+ * section count), a table of 24 byte section entries (id, offset, length)
+ * and the sections themselves, 8 byte aligned and little endian. Sections
+ * are mapped privately: structures read them in place and any edits stay
+ * in memory. Each section is mapped on its own, in segments of at most
+ * {@link #SEGMENT_SIZE} bytes, so files past two gigabytes load too.
+ * <p>
+ * A snapshot belongs to the map it was built from. If the map hash, size
+ * or format version differ, {@link #loadOrBuild(String, char[][])} builds
+ * the structures again and replaces the file.
+ *
+ * @author Ron Coleman
+ */
+public class Snapshot {
+    public final static int MAGIC = 0x4F41534E;
+    public final static int VERSION = 1;
+    public final static int HEADER_SIZE = 32;
+    public final static int ENTRY_SIZE = 24;
+
+    // Most bytes of a section one mapping covers, a whole label segment
+    public final static int SEGMENT_SIZE = 4 << ComponentIndex.SEGMENT_BITS;
+
+    // Section ids
+    public final static int SECTION_LABELS = 1;
+    public final static int SECTION_ROOTS = 2;
+
+    protected final char[][] tileMap;
+
+    // Mapped segments of each section by id, or null
+    protected final ByteBuffer[][] sections;
+
+    protected boolean rebuilt;
+
+    private ComponentIndex components;
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map the snapshot was built from
+     * @param sections Mapped segments of each section by id
+     */
+    protected Snapshot(char[][] tileMap, ByteBuffer[][] sections) {
+        this.tileMap = tileMap;
+        this.sections = sections;
+    }
+
+    /**
+     * Maps a snapshot if it exists and matches the map, otherwise builds and
+     * writes one first.
+     * @param path Snapshot file path
+     * @param tileMap Tile map, indexed [y][x]
+     * @return Snapshot
+     * @throws IOException If the snapshot can't be written or mapped
+     */
+    public static Snapshot loadOrBuild(String path, char[][] tileMap) throws IOException {
+        Snapshot snapshot = open(path, tileMap);
+
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        write(path, tileMap);
+
+        snapshot = open(path, tileMap);
+
+        if (snapshot == null) {
+            throw new IOException("can't read back snapshot " + path);
+        }
+
+        snapshot.rebuilt = true;
+
+        return snapshot;
+    }
+
+    /**
+     * Maps a snapshot.
+     * @param path Snapshot file path
+     * @param tileMap Tile map, indexed [y][x]
+     * @return Snapshot, or null if the file is missing, from another format
+     * version or from another map.
+     * @throws IOException If the file can't be read
+     */
+    public static Snapshot open(String path, char[][] tileMap) throws IOException {
+        if (!new File(path).isFile()) {
+            return null;
+        }
+
+        // Private mappings need a channel open for writing too
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getLong(8) != hash(tileMap)
+                    || header.getInt(16) != tileMap[0].length || header.getInt(20) != tileMap.length) {
+                return null;
+            }
+
+            int count = header.getInt(24);
+
+            if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > size) {
+                return null;
+            }
+
+            ByteBuffer table = read(channel, HEADER_SIZE, count * ENTRY_SIZE);
+            ByteBuffer[][] sections = new ByteBuffer[SECTION_ROOTS + 1][];
+
+            for (int k = 0; k < count; k++) {
+                int entry = k * ENTRY_SIZE;
+                int id = table.getInt(entry);
+                long offset = table.getLong(entry + 8);
+                long length = table.getLong(entry + 16);
+
+                if (offset < 0 || length < 0 || offset + length > size) {
+                    return null;
+                }
+
+                // Sections this version doesn't know are skipped
+                if (id > 0 && id < sections.length) {
+                    sections[id] = map(channel, offset, length);
+                }
+            }
+
+            return new Snapshot(tileMap, sections);
+        }
+    }
+
+    /**
+     * Reads part of a file into a little-endian heap buffer.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("snapshot ends early");
+            }
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Maps a section privately in segments of {@link #SEGMENT_SIZE} bytes.
+     */
+    private static ByteBuffer[] map(FileChannel channel, long offset, long length) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[(int) Math.max(1, (length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+        for (int k = 0; k < segments.length; k++) {
+            long start = (long) k * SEGMENT_SIZE;
+            long size = Math.min(SEGMENT_SIZE, length - start);
+
+            segments[k] = channel.map(FileChannel.MapMode.PRIVATE, offset + start, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        return segments;
+    }
+
+    /**
+     * Builds the structures for a map and writes them. The file is written
+     * beside the path and moved over it so readers never see half of one.
+     * @param path Snapshot file path
+     * @param tileMap Tile map, indexed [y][x]
+     * @throws IOException If the file can't be written
+     */
+    public static void write(String path, char[][] tileMap) throws IOException {
+        long cells = (long) tileMap.length * tileMap[0].length;
+
+        if (cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("map too big for a snapshot: "
+                    + tileMap[0].length + "x" + tileMap.length + " is over " + Integer.MAX_VALUE + " tiles");
+        }
+
+        ComponentIndex index = new ComponentIndex(tileMap);
+
+        int[] ids = {SECTION_LABELS, SECTION_ROOTS};
+        long[] lengths = {4L * cells, 4L * (1 + index.nextLabel)};
+        long[] offsets = new long[ids.length];
+
+        long offset = align(HEADER_SIZE + (long) ids.length * ENTRY_SIZE);
+
+        for (int k = 0; k < ids.length; k++) {
+            offsets[k] = offset;
+            offset = align(offset + lengths[k]);
+        }
+
+        File file = new File(path);
+        File tmp = new File(path + ".tmp");
+
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            FileChannel channel = out.getChannel();
+
+            out.setLength(0);
+            out.setLength(offset);
+
+            ByteBuffer header = ByteBuffer.allocate((int) offsets[0]).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(hash(tileMap))
+                    .putInt(tileMap[0].length).putInt(tileMap.length).putInt(ids.length).putInt(0);
+
+            for (int k = 0; k < ids.length; k++) {
+                header.putInt(ids[k]).putInt(0).putLong(offsets[k]).putLong(lengths[k]);
+            }
+
+            header.rewind();
+            channel.write(header, 0);
+
+            // Labels go out in blocks so big maps don't need a second copy
+            ByteBuffer block = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            long position = offsets[0];
+
+            for (int k = 0; k < cells; k++) {
+                block.putInt(index.label(k));
+
+                if (!block.hasRemaining() || k == cells - 1) {
+                    position = drain(channel, block, position);
+                }
+            }
+
+            // Roots go out the same way: the count, then the union-find
+            position = offsets[1];
+            block.putInt(index.nextLabel);
+
+            for (int k = 0; k < index.nextLabel; k++) {
+                if (!block.hasRemaining()) {
+                    position = drain(channel, block, position);
+                }
+
+                block.putInt(index.roots[k]);
+            }
+
+            drain(channel, block, position);
+
+            channel.force(false);
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes out a filled block and empties it.
+     * @return Position after the block
+     */
+    private static long drain(FileChannel channel, ByteBuffer block, long position) throws IOException {
+        block.flip();
+
+        while (block.hasRemaining()) {
+            position += channel.write(block, position);
+        }
+
+        block.clear();
+
+        return position;
+    }
+
+    /**
+     * Gets the region labels, read in place from the mapped file.
+     * @return Region labels
+     */
+    public synchronized ComponentIndex getComponents() {
+        if (components == null) {
+            ByteBuffer[] segments = section(SECTION_LABELS);
+            IntBuffer[] labels = new IntBuffer[segments.length];
+
+            for (int k = 0; k < segments.length; k++) {
+                labels[k] = segments[k].asIntBuffer();
+            }
+
+            ByteBuffer[] stored = section(SECTION_ROOTS);
+
+            int count = intAt(stored, 0);
+            int[] roots = new int[Math.max(16, count)];
+
+            for (int k = 0; k < count; k++) {
+                roots[k] = intAt(stored, k + 1);
+            }
+
+            components = new ComponentIndex(tileMap, labels, roots, count);
+        }
+
+        return components;
+    }
+
+    /**
+     * Determines whether the last load had to build the structures again.
+     * @return True if the snapshot was rebuilt.
+     */
+    public boolean isRebuilt() {
+        return rebuilt;
+    }
+
+    /**
+     * Gets a section of the file.
+     * @param id Section id
+     * @return Little-endian segments of the section, each
+     * {@link #SEGMENT_SIZE} bytes but the last
+     * @throws IllegalStateException If the file has no such section
+     */
+    protected ByteBuffer[] section(int id) {
+        if (id <= 0 || id >= sections.length || sections[id] == null) {
+            throw new IllegalStateException("snapshot has no section " + id);
+        }
+
+        return sections[id];
+    }
+
+    /**
+     * Gets an int of a segmented section.
+     * @param segments Section segments
+     * @param index Int index
+     * @return Value
+     */
+    private static int intAt(ByteBuffer[] segments, int index) {
+        long byteIndex = 4L * index;
+
+        return segments[(int) (byteIndex / SEGMENT_SIZE)].getInt((int) (byteIndex % SEGMENT_SIZE));
+    }
+
+    /**
+     * Hashes a map with 64-bit FNV-1a over its size and tiles.
+     * @param tileMap Tile map, indexed [y][x]
+     * @return Hash
+     */
+    public static long hash(char[][] tileMap) {
+        long hash = 0xcbf29ce484222325L;
+
+        hash = mix(hash, tileMap[0].length, 4);
+        hash = mix(hash, tileMap.length, 4);
+
+        for (char[] row : tileMap) {
+            for (char tile : row) {
+                hash = mix(hash, tile, 2);
+            }
+        }
+
+        return hash;
+    }
+
+    private static long mix(long hash, int value, int bytes) {
+        for (int k = 0; k < bytes; k++) {
+            hash ^= (value >>> (8 * k)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
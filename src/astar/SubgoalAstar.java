@@ -0,0 +1,316 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.Astar.Outcome;
+import astar.SubgoalGraph.Scratch;
+import astar.util.SearchOptions;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * A* over a {@link SubgoalGraph}. The start and destination join the graph
+ * through the subgoals they reach directly; the search runs on subgoals
+ * alone and the path between them is filled in tile by tile at the end.
+ * <p>
+ * Steps are octile without corner cutting whatever the options say, and
+ * the heuristic is always the octile distance, which is exact between
+ * neighbouring subgoals. Step costs are not supported.
+ *
+ * @author Ron Coleman
+ */
+public class SubgoalAstar {
+    protected final SubgoalGraph graph;
+    protected final int startX;
+    protected final int startY;
+    protected final int destX;
+    protected final int destY;
+
+    // Statistics of the last search
+    protected long expansions;
+    protected long generated;
+    protected long openPeak;
+    protected Outcome outcome;
+
+    /**
+     * Constructor.
+     * @param graph Subgoal graph of the map
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     */
+    public SubgoalAstar(SubgoalGraph graph, int startX, int startY, int destX, int destY) {
+        this.graph = graph;
+        this.startX = startX;
+        this.startY = startY;
+        this.destX = destX;
+        this.destY = destY;
+    }
+
+    /**
+     * Finds a path from start to destination.
+     * @param options Search options; only the node limit and deadline apply
+     * @return Destination node if path found, null if no path found or the
+     * node limit or deadline was reached.
+     */
+    public Node find(SearchOptions options) {
+        expansions = 0;
+        generated = 0;
+        openPeak = 0;
+        outcome = Outcome.NO_PATH;
+
+        int width = graph.width;
+        int start = startY * width + startX;
+        int dest = destY * width + destX;
+
+        if (graph.blocked(startX, startY) || graph.blocked(destX, destY)) {
+            return null;
+        }
+
+        if (start == dest) {
+            outcome = Outcome.FOUND;
+            return toNodes(new int[] {start});
+        }
+
+        int count = graph.count;
+        Scratch s = graph.scratch.get();
+
+        // Graph nodes: subgoals, then the start and destination if they
+        // are not subgoals already
+        int startNode = graph.ids[start] != SubgoalGraph.NONE ? graph.ids[start] : count;
+        int destNode = graph.ids[dest] != SubgoalGraph.NONE ? graph.ids[dest] : count + 1;
+
+        int[] startEdges = null;
+
+        if (startNode == count) {
+            if (graph.reach(start, dest, s)) {
+                outcome = Outcome.FOUND;
+                return toNodes(direct(start, dest));
+            }
+
+            startEdges = Arrays.copyOf(s.found, s.foundCount);
+        }
+
+        // Subgoals with a direct line to the destination
+        boolean[] toDest = new boolean[count + 2];
+
+        if (destNode == count + 1) {
+            graph.reach(dest, SubgoalGraph.NONE, s);
+
+            for (int n = 0; n < s.foundCount; n++) {
+                toDest[s.found[n]] = true;
+            }
+        }
+
+        double[] g = new double[count + 2];
+        int[] parents = new int[count + 2];
+        byte[] seen = new byte[count + 2];
+
+        PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> {
+            int order = Double.compare(a[0], b[0]);
+
+            // Ties go to the larger g which is nearer the destination
+            return order != 0 ? order : Double.compare(b[1], a[1]);
+        });
+
+        parents[startNode] = -1;
+        seen[startNode] = 1;
+        open.add(new double[] {graph.distance(start, dest), 0, startNode});
+
+        while (!open.isEmpty()) {
+            double[] top = open.poll();
+            int cur = (int) top[2];
+
+            // Stale entry for a node already reached more cheaply
+            if (seen[cur] == 2 || top[1] > g[cur]) {
+                continue;
+            }
+
+            if (cur == destNode) {
+                outcome = Outcome.FOUND;
+                return toNodes(refine(parents, destNode, start, dest, count));
+            }
+
+            seen[cur] = 2;
+            expansions++;
+
+            // Checking the clock is not free so only do it now and then
+            if ((expansions & 0xFF) == 0 && options.expired()) {
+                outcome = Outcome.DEADLINE;
+                return null;
+            }
+
+            int from = cell(cur, start, dest, count);
+
+            int edges = cur == count ? startEdges.length : graph.first[cur + 1] - graph.first[cur];
+
+            for (int e = 0; e <= edges; e++) {
+                int adj;
+
+                if (e < edges) {
+                    adj = cur == count ? startEdges[e] : graph.targets[graph.first[cur] + e];
+                } else if (toDest[cur]) {
+                    adj = destNode;
+                } else {
+                    break;
+                }
+
+                if (seen[adj] == 2) {
+                    continue;
+                }
+
+                int to = cell(adj, start, dest, count);
+                double adjG = g[cur] + graph.distance(from, to);
+
+                if (seen[adj] == 1 && adjG >= g[adj]) {
+                    continue;
+                }
+
+                if (seen[adj] == 0 && ++generated > options.limit) {
+                    outcome = Outcome.LIMIT;
+                    return null;
+                }
+
+                seen[adj] = 1;
+                g[adj] = adjG;
+                parents[adj] = cur;
+
+                open.add(new double[] {adjG + graph.distance(to, dest), adjG, adj});
+                openPeak = Math.max(openPeak, open.size());
+            }
+        }
+
+        return null;
+    }
+
+    private int cell(int node, int start, int dest, int count) {
+        return node < count ? graph.cells[node] : node == count ? start : dest;
+    }
+
+    /**
+     * Fills in the tiles between the subgoals of a graph path.
+     * @return Tiles from start to destination, row major
+     */
+    private int[] refine(int[] parents, int destNode, int start, int dest, int count) {
+        int[] tiles = new int[16];
+        int size = 0;
+
+        // Walk back from the destination, filling each leg backwards
+        for (int node = destNode; parents[node] >= 0; node = parents[node]) {
+            int to = cell(node, start, dest, count);
+            int from = cell(parents[node], start, dest, count);
+
+            int[] leg = graph.refine(from, to);
+
+            if (size + leg.length + 1 > tiles.length) {
+                tiles = Arrays.copyOf(tiles, Math.max(tiles.length * 2, size + leg.length + 1));
+            }
+
+            for (int k = leg.length - 1; k >= 0; k--) {
+                tiles[size++] = leg[k];
+            }
+        }
+
+        tiles[size++] = start;
+
+        // Reverse into start to destination order
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int t = tiles[i];
+            tiles[i] = tiles[j];
+            tiles[j] = t;
+        }
+
+        return Arrays.copyOf(tiles, size);
+    }
+
+    /**
+     * Gets the tiles of a direct path, from included.
+     */
+    private int[] direct(int from, int to) {
+        int[] leg = graph.refine(from, to);
+        int[] tiles = new int[leg.length + 1];
+
+        tiles[0] = from;
+        System.arraycopy(leg, 0, tiles, 1, leg.length);
+
+        return tiles;
+    }
+
+    /**
+     * Builds the linked path of nodes through tiles.
+     * @param tiles Neighbouring tiles, row major
+     * @return Destination node
+     */
+    private Node toNodes(int[] tiles) {
+        int width = graph.width;
+
+        Node node = null;
+        double distance = 0;
+
+        for (int k = 0; k < tiles.length; k++) {
+            Node next = new Node(tiles[k] % width, tiles[k] / width);
+
+            if (node != null) {
+                distance += graph.distance(tiles[k - 1], tiles[k]);
+
+                next.setParent(node);
+                node.setChild(next);
+            }
+
+            next.setDistance(distance);
+            node = next;
+        }
+
+        return node;
+    }
+
+    /**
+     * Gets the number of subgoals expanded by the last search.
+     * @return Expansions
+     */
+    public long getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * Gets the number of subgoals generated by the last search.
+     * @return Generated nodes
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Gets the largest size of the open list during the last search.
+     * @return Open list peak
+     */
+    public long getOpenPeak() {
+        return openPeak;
+    }
+
+    /**
+     * Gets how the last search ended.
+     * @return Outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+}
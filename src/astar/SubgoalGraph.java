@@ -0,0 +1,403 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.jfr.SearchEvents;
+import astar.jfr.Status;
+import java.util.Arrays;
+
+/**
+ * A simple subgoal graph over a static map, for octile steps without
+ * corner cutting. Subgoals sit at the convex corners of obstacles, and an
+ * edge joins two subgoals when a path as short as the octile distance runs
+ * between them without passing another subgoal. Every shortest path on the
+ * grid bends only at subgoals, so searching the graph is enough.
+ * <p>
+ * The graph is built once and may then serve {@link SubgoalAstar} queries
+ * from many threads. Tiles must not change afterwards.
+ *
+ * @author Ron Coleman
+ */
+public class SubgoalGraph implements Status {
+    /**
+     * Id of tiles that are not subgoals.
+     */
+    public final static int NONE = -1;
+
+    protected final char[][] tileMap;
+    protected final int width;
+    protected final int height;
+
+    // Subgoal id of each tile, row major
+    protected final int[] ids;
+
+    // Tile of each subgoal
+    protected int[] cells;
+    protected int count;
+
+    // Edges of subgoal i are targets[first[i]] up to targets[first[i + 1]]
+    protected int[] first;
+    protected int[] targets;
+
+    // Search scratch, one per thread since queries search the grid too
+    protected final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Marks and stacks for the short grid searches.
+     */
+    protected class Scratch {
+        final int[] stamps = new int[width * height];
+        final int[] parents = new int[width * height];
+        int[] stack = new int[256];
+        int stamp;
+
+        // Subgoals found by the last call to reach
+        int[] found = new int[16];
+        int foundCount;
+
+        int next() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+
+            return stamp;
+        }
+
+        void push(int size, int cell) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+
+            stack[size] = cell;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]
+     */
+    public SubgoalGraph(char[][] tileMap) {
+        this.tileMap = tileMap;
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+        this.ids = new int[width * height];
+
+        place();
+        connect();
+
+        SearchEvents.watch(this);
+    }
+
+    /**
+     * Places a subgoal on every free tile with an obstacle diagonally next
+     * to it and both tiles beside that obstacle free.
+     */
+    protected final void place() {
+        Arrays.fill(ids, NONE);
+
+        cells = new int[64];
+        count = 0;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (blocked(x, y) || !corner(x, y)) {
+                    continue;
+                }
+
+                if (count == cells.length) {
+                    cells = Arrays.copyOf(cells, count * 2);
+                }
+
+                ids[y * width + x] = count;
+                cells[count++] = y * width + x;
+            }
+        }
+
+        cells = Arrays.copyOf(cells, count);
+    }
+
+    private boolean corner(int x, int y) {
+        // Odd offsets are diagonal
+        for (int k = 1; k < HeapAstar.DX.length; k += 2) {
+            int dx = HeapAstar.DX[k];
+            int dy = HeapAstar.DY[k];
+
+            if (blocked(x + dx, y + dy) && !blocked(x + dx, y) && !blocked(x, y + dy)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the edges of every subgoal.
+     */
+    protected final void connect() {
+        Scratch s = scratch.get();
+
+        first = new int[count + 1];
+        targets = new int[4 * count + 1];
+
+        int edges = 0;
+
+        for (int id = 0; id < count; id++) {
+            first[id] = edges;
+
+            reach(cells[id], NONE, s);
+
+            if (edges + s.foundCount > targets.length) {
+                targets = Arrays.copyOf(targets, Math.max(targets.length * 2, edges + s.foundCount));
+            }
+
+            System.arraycopy(s.found, 0, targets, edges, s.foundCount);
+            edges += s.foundCount;
+        }
+
+        first[count] = edges;
+        targets = Arrays.copyOf(targets, edges);
+    }
+
+    /**
+     * Finds the subgoals reachable from a tile in a straight octile line's
+     * worth of steps, not passing through other subgoals. They go in the
+     * scratch's found list.
+     * @param from Tile, row major
+     * @param goal Tile to look out for as well, or NONE
+     * @param s Scratch of this thread
+     * @return True if the goal is reachable that way.
+     */
+    protected boolean reach(int from, int goal, Scratch s) {
+        int stamp = s.next();
+        int fromX = from % width;
+        int fromY = from / width;
+        boolean reached = false;
+
+        s.foundCount = 0;
+        s.stamps[from] = stamp;
+        s.stack[0] = from;
+
+        int size = 1;
+
+        while (size > 0) {
+            int cur = s.stack[--size];
+            int x = cur % width;
+            int y = cur / width;
+
+            for (int k = 0; k < HeapAstar.DX.length; k++) {
+                int adjX = x + HeapAstar.DX[k];
+                int adjY = y + HeapAstar.DY[k];
+
+                if (!legal(x, y, adjX, adjY)) {
+                    continue;
+                }
+
+                int adj = adjY * width + adjX;
+
+                if (s.stamps[adj] == stamp || !onward(fromX, fromY, x, y, adjX, adjY)) {
+                    continue;
+                }
+
+                s.stamps[adj] = stamp;
+
+                if (adj == goal) {
+                    reached = true;
+                    continue;
+                }
+
+                if (ids[adj] != NONE) {
+                    if (s.foundCount == s.found.length) {
+                        s.found = Arrays.copyOf(s.found, s.foundCount * 2);
+                    }
+
+                    s.found[s.foundCount++] = ids[adj];
+                    continue;
+                }
+
+                s.push(size++, adj);
+            }
+        }
+
+        return reached;
+    }
+
+    /**
+     * Finds one path as short as the octile distance between two tiles,
+     * which must be reachable from each other that way.
+     * @param from From tile, row major
+     * @param to To tile, row major
+     * @return Tiles of the path after from, up to and including to.
+     */
+    protected int[] refine(int from, int to) {
+        Scratch s = scratch.get();
+
+        int stamp = s.next();
+        int fromX = from % width;
+        int fromY = from / width;
+        int toX = to % width;
+        int toY = to / width;
+
+        s.stamps[from] = stamp;
+        s.stack[0] = from;
+
+        int size = 1;
+
+        // Depth first, only along steps that stay shortest both ways
+        while (size > 0 && s.stamps[to] != stamp) {
+            int cur = s.stack[--size];
+            int x = cur % width;
+            int y = cur / width;
+
+            for (int k = 0; k < HeapAstar.DX.length; k++) {
+                int adjX = x + HeapAstar.DX[k];
+                int adjY = y + HeapAstar.DY[k];
+
+                if (!legal(x, y, adjX, adjY)) {
+                    continue;
+                }
+
+                int adj = adjY * width + adjX;
+
+                if (s.stamps[adj] == stamp || !onward(fromX, fromY, x, y, adjX, adjY)
+                        || !onward(toX, toY, adjX, adjY, x, y)) {
+                    continue;
+                }
+
+                s.stamps[adj] = stamp;
+                s.parents[adj] = cur;
+                s.push(size++, adj);
+            }
+        }
+
+        if (s.stamps[to] != stamp) {
+            throw new IllegalStateException("no direct path " + from + " to " + to);
+        }
+
+        int steps = 0;
+        for (int c = to; c != from; c = s.parents[c]) {
+            steps++;
+        }
+
+        int[] path = new int[steps];
+
+        for (int c = to; c != from; c = s.parents[c]) {
+            path[--steps] = c;
+        }
+
+        return path;
+    }
+
+    /**
+     * Determines whether a step from (x, y) to (adjX, adjY) moves one
+     * octile step further from (originX, originY): one more diagonal or
+     * one more straight step than before.
+     */
+    private static boolean onward(int originX, int originY, int x, int y, int adjX, int adjY) {
+        int dx0 = Math.abs(x - originX);
+        int dy0 = Math.abs(y - originY);
+        int dx1 = Math.abs(adjX - originX);
+        int dy1 = Math.abs(adjY - originY);
+
+        int diagonals0 = Math.min(dx0, dy0);
+        int straights0 = Math.max(dx0, dy0) - diagonals0;
+        int diagonals1 = Math.min(dx1, dy1);
+        int straights1 = Math.max(dx1, dy1) - diagonals1;
+
+        boolean diagonal = adjX != x && adjY != y;
+
+        return diagonal ? diagonals1 == diagonals0 + 1 && straights1 == straights0
+                : diagonals1 == diagonals0 && straights1 == straights0 + 1;
+    }
+
+    /**
+     * Determines whether a one-tile step is allowed: onto a free tile and,
+     * when diagonal, not cutting a corner.
+     */
+    protected boolean legal(int x, int y, int adjX, int adjY) {
+        if (blocked(adjX, adjY)) {
+            return false;
+        }
+
+        return adjX == x || adjY == y || (!blocked(adjX, y) && !blocked(x, adjY));
+    }
+
+    /**
+     * Gets the octile distance between two tiles.
+     */
+    protected double distance(int from, int to) {
+        int dx = Math.abs(from % width - to % width);
+        int dy = Math.abs(from / width - to / width);
+
+        return Math.min(dx, dy) * Astar.COST_DIAGONAL + Math.abs(dx - dy);
+    }
+
+    /**
+     * Determines whether a tile is an obstacle or off the map.
+     */
+    protected boolean blocked(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return true;
+        }
+
+        return tileMap[y][x] == Astar.SYMBOL_OBSTACLE;
+    }
+
+    /**
+     * Gets the subgoal at a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Subgoal id, or NONE
+     */
+    public int getSubgoal(int x, int y) {
+        return ids[y * width + x];
+    }
+
+    public int getSubgoalCount() {
+        return count;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String getStatusName() {
+        return "subgoals";
+    }
+
+    @Override
+    public long getStatusEntries() {
+        return count;
+    }
+
+    @Override
+    public long getStatusBytes() {
+        return 4L * (ids.length + cells.length + first.length + targets.length);
+    }
+}
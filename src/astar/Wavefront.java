@@ -0,0 +1,276 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import java.util.Arrays;
+
+/**
+ * This class answers unit-cost questions (reachability, distance bands,
+ * distance fields) with a breadth-first wavefront over a bit-packed copy of
+ * the free tiles. Each wave advances 64 tiles per word with shifts and masks
+ * instead of visiting nodes one by one.
+ * <p>
+ * Moves are the same eight as Astar's, each costing one step.
+ *
+ * @author Ron Coleman
+ */
+public class Wavefront {
+    /**
+     * Distance of tiles the wavefront never reaches.
+     */
+    public final static int UNREACHED = -1;
+
+    protected final int width;
+    protected final int height;
+
+    // Words per row; bit x of row y is bit (x & 63) of word y * words + (x >>> 6)
+    protected final int words;
+
+    // One bit per free tile
+    protected final long[] free;
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]
+     */
+    public Wavefront(char[][] tileMap) {
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+        this.words = (width + 63) >>> 6;
+        this.free = new long[words * height];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (tileMap[y][x] != Astar.SYMBOL_OBSTACLE) {
+                    free[y * words + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the step distance from a tile to every other tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Distances, row major, UNREACHED where there is no path.
+     */
+    public int[] distances(int x, int y) {
+        int[] dist = new int[width * height];
+        Arrays.fill(dist, UNREACHED);
+
+        expand(x, y, Integer.MAX_VALUE, -1, -1, dist);
+
+        return dist;
+    }
+
+    /**
+     * Gets the tiles reachable in at most k steps.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @param k Maximum number of steps
+     * @return Bit-packed tiles, test with {@link #contains(long[], int, int)}.
+     */
+    public long[] within(int x, int y, int k) {
+        return expand(x, y, k, -1, -1, null);
+    }
+
+    /**
+     * Gets the step distance between two tiles, stopping as soon as the
+     * wavefront reaches the destination.
+     * @param x0 From X coordinate.
+     * @param y0 From Y coordinate.
+     * @param x1 To X coordinate.
+     * @param y1 To Y coordinate.
+     * @return Steps, or UNREACHED if there is no path.
+     */
+    public int distance(int x0, int y0, int x1, int y1) {
+        int[] found = {UNREACHED};
+
+        expand(x0, y0, Integer.MAX_VALUE, x1, y1, found);
+
+        return found[0];
+    }
+
+    /**
+     * Determines if a tile is in a bit-packed set.
+     * @param bits Bit-packed tiles from this wavefront
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return True if the tile is in the set.
+     */
+    public boolean contains(long[] bits, int x, int y) {
+        return (bits[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Runs the wavefront.
+     *
+     * @param x Source X coordinate.
+     * @param y Source Y coordinate.
+     * @param k Maximum number of waves
+     * @param stopX Destination X coordinate, or -1 to run to exhaustion
+     * @param stopY Destination Y coordinate
+     * @param dist Distances to fill in, the single distance to the
+     * destination when there is one, or null
+     * @return Visited tiles
+     */
+    protected long[] expand(int x, int y, int k, int stopX, int stopY, int[] dist) {
+        long[] visited = new long[free.length];
+        long[] frontier = new long[free.length];
+        long[] next = new long[free.length];
+
+        // Words first through last of each frontier row may be non-zero
+        int[] first = new int[height];
+        int[] last = new int[height];
+        int[] nextFirst = new int[height];
+        int[] nextLast = new int[height];
+
+        int cell = y * words + (x >>> 6);
+
+        if ((free[cell] & (1L << x)) == 0) {
+            return visited;
+        }
+
+        frontier[cell] = visited[cell] = 1L << x;
+        first[y] = last[y] = x >>> 6;
+
+        if (stopX >= 0) {
+            if (x == stopX && y == stopY) {
+                dist[0] = 0;
+                return visited;
+            }
+        } else if (dist != null) {
+            dist[y * width + x] = 0;
+        }
+
+        // Rows lo through hi hold the whole frontier
+        int lo = y;
+        int hi = y;
+
+        for (int wave = 1; wave <= k && lo <= hi; wave++) {
+            int from = Math.max(0, lo - 1);
+            int to = Math.min(height - 1, hi + 1);
+
+            int nextLo = Integer.MAX_VALUE;
+            int nextHi = -1;
+
+            for (int row = from; row <= to; row++) {
+                int rowLo = Math.max(lo, row - 1);
+                int rowHi = Math.min(hi, row + 1);
+
+                // Only words next to a live frontier word can change
+                int start = words;
+                int end = -1;
+
+                for (int r = rowLo; r <= rowHi; r++) {
+                    if (first[r] <= last[r]) {
+                        start = Math.min(start, first[r] - 1);
+                        end = Math.max(end, last[r] + 1);
+                    }
+                }
+
+                start = Math.max(0, start);
+                end = Math.min(words - 1, end);
+
+                nextFirst[row] = words;
+                nextLast[row] = -1;
+
+                for (int i = start; i <= end; i++) {
+                    long grown = 0;
+
+                    // Spread each neighbouring frontier row left and right
+                    for (int r = rowLo; r <= rowHi; r++) {
+                        int base = r * words;
+                        long f = frontier[base + i];
+                        long left = i > 0 ? frontier[base + i - 1] : 0;
+                        long right = i < words - 1 ? frontier[base + i + 1] : 0;
+
+                        grown |= f | (f << 1) | (left >>> 63) | (f >>> 1) | (right << 63);
+                    }
+
+                    int word = row * words + i;
+                    long bits = grown & free[word] & ~visited[word];
+
+                    next[word] = bits;
+
+                    if (bits == 0) {
+                        continue;
+                    }
+
+                    nextFirst[row] = Math.min(nextFirst[row], i);
+                    nextLast[row] = i;
+                    visited[word] |= bits;
+
+                    if (stopX >= 0) {
+                        if (row == stopY && i == stopX >>> 6 && (bits & (1L << stopX)) != 0) {
+                            dist[0] = wave;
+                            return visited;
+                        }
+                    } else if (dist != null) {
+                        // Record the distance of each newly reached tile
+                        int base = row * width + (i << 6);
+
+                        while (bits != 0) {
+                            dist[base + Long.numberOfTrailingZeros(bits)] = wave;
+                            bits &= bits - 1;
+                        }
+                    }
+                }
+
+                if (nextFirst[row] <= nextLast[row]) {
+                    nextLo = Math.min(nextLo, row);
+                    nextHi = row;
+                }
+            }
+
+            // The old frontier becomes the next buffer so it must be clean
+            for (int r = lo; r <= hi; r++) {
+                if (first[r] <= last[r]) {
+                    Arrays.fill(frontier, r * words + first[r], r * words + last[r] + 1, 0);
+                }
+            }
+
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+
+            int[] swapRows = first;
+            first = nextFirst;
+            nextFirst = swapRows;
+
+            swapRows = last;
+            last = nextLast;
+            nextLast = swapRows;
+
+            lo = nextLo;
+            hi = nextHi;
+        }
+
+        return visited;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.jfr;
+
+import astar.util.SearchOptions;
+
+/**
+ * What {@link SearchEvents} needs from the flight recorder. The classes
+ * that use jdk.jfr are built apart from the rest, which targets Java 8,
+ * and reached only through this interface.
+ *
+ * @author Ron Coleman
+ */
+interface Recorder {
+    /**
+     * Starts timing a search.
+     * @return Event, or null if nobody is recording it
+     */
+    public Object begin();
+
+    /**
+     * Fills in and commits an event from begin().
+     */
+    public void end(Object event, int startX, int startY, int destX, int destY,
+            SearchOptions options, long expansions, long openPeak, Object outcome);
+
+    /**
+     * Registers the periodic precomputation event.
+     */
+    public void install();
+}
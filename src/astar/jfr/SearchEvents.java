@@ -0,0 +1,118 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.jfr;
+
+import astar.util.SearchOptions;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Entry point for flight recorder events. On JVMs without JFR every method
+ * does nothing, and with JFR a search costs one enabled check unless a
+ * recording has the event turned on.
+ * <p>
+ * The events themselves live in the separate <code>jfr</code> source root,
+ * compiled for Java 11 after the rest so this package still builds with
+ * <code>--release 8</code>. If they weren't built, or the JVM has no JFR,
+ * the events are simply off.
+ * <p>
+ * Typical use:
+ * <pre>
+ * Object event = SearchEvents.begin();
+ * ... search ...
+ * SearchEvents.end(event, ...);
+ * </pre>
+ *
+ * @author Ron Coleman
+ */
+public final class SearchEvents {
+    private final static String RECORDER = "astar.jfr.JfrRecorder";
+
+    // Flight recorder, or null if there isn't one
+    private final static Recorder recorder = load();
+
+    // Structures reported by the periodic event, held weakly
+    final static List<WeakReference<Status>> watched = new CopyOnWriteArrayList<>();
+
+    private static boolean hooked;
+
+    private SearchEvents() {
+    }
+
+    private static Recorder load() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+
+            return (Recorder) Class.forName(RECORDER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts timing a search.
+     * @return Event to pass to end, or null if nothing is recording
+     */
+    public static Object begin() {
+        return recorder == null ? null : recorder.begin();
+    }
+
+    /**
+     * Finishes a search and commits its event.
+     * @param event Event from begin, may be null
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     * @param options Search options
+     * @param expansions Nodes expanded
+     * @param openPeak Largest open list
+     * @param outcome How the search ended
+     */
+    public static void end(Object event, int startX, int startY, int destX, int destY,
+            SearchOptions options, long expansions, long openPeak, Object outcome) {
+        if (event == null) {
+            return;
+        }
+
+        recorder.end(event, startX, startY, destX, destY, options, expansions, openPeak, outcome);
+    }
+
+    /**
+     * Reports a structure in the periodic precomputation event for as long
+     * as it is reachable.
+     * @param status Structure to report
+     */
+    public static synchronized void watch(Status status) {
+        if (recorder == null) {
+            return;
+        }
+
+        // Drop structures that have been collected since
+        watched.removeIf(ref -> ref.get() == null);
+        watched.add(new WeakReference<>(status));
+
+        if (!hooked) {
+            recorder.install();
+            hooked = true;
+        }
+    }
+}
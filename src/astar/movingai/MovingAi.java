@@ -0,0 +1,171 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.movingai;
+
+import astar.Astar;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the Moving AI benchmark formats: <code>.map</code> grids and
+ * <code>.scen</code> scenario lists.
+ * <p>
+ * Ground tiles ('.', 'G') and swamp ('S') become free tiles. Everything
+ * else, including water ('W') and trees ('T'), becomes an obstacle, which
+ * is how the published optimal lengths treat them.
+ *
+ * @author Ron Coleman
+ */
+public class MovingAi {
+    /**
+     * One scenario: a query with its known optimal length.
+     */
+    public static class Scenario {
+        public final int bucket;
+        public final String map;
+        public final int width;
+        public final int height;
+        public final int startX;
+        public final int startY;
+        public final int goalX;
+        public final int goalY;
+        public final double optimal;
+
+        public Scenario(int bucket, String map, int width, int height, int startX, int startY, int goalX, int goalY,
+                double optimal) {
+            this.bucket = bucket;
+            this.map = map;
+            this.width = width;
+            this.height = height;
+            this.startX = startX;
+            this.startY = startY;
+            this.goalX = goalX;
+            this.goalY = goalY;
+            this.optimal = optimal;
+        }
+    }
+
+    /**
+     * Loads a map.
+     * @param path Path of the .map file
+     * @return Tile map, indexed [y][x]
+     * @throws IOException If the file can't be read or isn't a map
+     */
+    public static char[][] loadMap(String path) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            int width = -1;
+            int height = -1;
+
+            String line;
+
+            // Header lines up to "map", in any order
+            while ((line = reader.readLine()) != null && !line.trim().equals("map")) {
+                String[] fields = line.trim().split("\\s+");
+
+                if (fields[0].equals("width")) {
+                    width = Integer.parseInt(fields[1]);
+                } else if (fields[0].equals("height")) {
+                    height = Integer.parseInt(fields[1]);
+                }
+            }
+
+            if (line == null || width <= 0 || height <= 0) {
+                throw new IOException("not a map file: " + path);
+            }
+
+            char[][] tileMap = new char[height][width];
+
+            for (int y = 0; y < height; y++) {
+                line = reader.readLine();
+
+                if (line == null || line.length() < width) {
+                    throw new IOException("short map row " + y + " in " + path);
+                }
+
+                for (int x = 0; x < width; x++) {
+                    tileMap[y][x] = translate(line.charAt(x));
+                }
+            }
+
+            return tileMap;
+        }
+    }
+
+    /**
+     * Loads a scenario list.
+     * @param path Path of the .scen file
+     * @return Scenarios in file order
+     * @throws IOException If the file can't be read or isn't a scenario list
+     */
+    public static List<Scenario> loadScenarios(String path) throws IOException {
+        List<Scenario> scenarios = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+
+                if (trimmed.isEmpty() || trimmed.startsWith("version")) {
+                    continue;
+                }
+
+                // Map names may hold spaces, so split on tabs when there are any
+                String[] fields = trimmed.split(trimmed.indexOf('\t') >= 0 ? "\t" : "\\s+");
+
+                if (fields.length < 9) {
+                    throw new IOException("bad scenario in " + path + ": " + line);
+                }
+
+                scenarios.add(new Scenario(
+                        Integer.parseInt(fields[0].trim()),
+                        fields[1].trim(),
+                        Integer.parseInt(fields[2].trim()),
+                        Integer.parseInt(fields[3].trim()),
+                        Integer.parseInt(fields[4].trim()),
+                        Integer.parseInt(fields[5].trim()),
+                        Integer.parseInt(fields[6].trim()),
+                        Integer.parseInt(fields[7].trim()),
+                        Double.parseDouble(fields[8].trim())));
+            }
+        }
+
+        return scenarios;
+    }
+
+    /**
+     * Translates a Moving AI terrain symbol to a tile symbol.
+     * @param sym Terrain symbol
+     * @return Tile symbol
+     */
+    protected static char translate(char sym) {
+        switch (sym) {
+            case '.':
+            case 'G':
+            case 'S':
+                return Astar.SYMBOL_FREE;
+            default:
+                return Astar.SYMBOL_OBSTACLE;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.movingai;
+
+import astar.Astar;
+import astar.Node;
+import astar.SubgoalGraph;
+import astar.movingai.MovingAi.Scenario;
+import astar.util.Config;
+import astar.util.Config.Engine;
+import astar.util.Config.Heuristic;
+import astar.util.Config.Metric;
+import astar.util.SearchOptions;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Runs Moving AI scenario files and checks each path length against the
+ * published optimum. Searches use octile steps without corner cutting,
+ * the rules the optima were computed under.
+ * <p>
+ * Usage: <code>SuiteRunner -scen file.scen... [-maps directory]
+ * [-engine heap|off_heap|parallel|fringe|subgoal] [-heuristic octile|...]
+ * [-tolerance t] [-format csv|json]</code>
+ * <p>
+ * Map names in a scenario file are looked up in the maps directory if one
+ * is given, otherwise beside the scenario file.
+ *
+ * @author Ron Coleman
+ */
+public class SuiteRunner {
+    public final static String FORMAT_CSV = "csv";
+    public final static String FORMAT_JSON = "json";
+    public final static double DEFAULT_TOLERANCE = 1e-3;
+
+    protected final SearchOptions options;
+    protected final double tolerance;
+    protected final String maps;
+
+    // Maps already loaded, by path
+    protected final Map<String, char[][]> loaded = new HashMap<>();
+
+    // Subgoal graphs of maps already loaded, built for the subgoal engine
+    protected final Map<char[][], SubgoalGraph> graphs = new IdentityHashMap<>();
+
+    // Results by bucket, in bucket order
+    protected final TreeMap<Integer, Bucket> buckets = new TreeMap<>();
+
+    /**
+     * Results of one bucket.
+     */
+    protected static class Bucket {
+        int queries;
+        int solved;
+        int optimal;
+        long expansions;
+        long nanos;
+        double worst;
+    }
+
+    /**
+     * Constructor.
+     * @param options Search options, the metric is forced to octile
+     * @param tolerance Largest difference from the optimum still counted
+     * as optimal
+     * @param maps Directory of map files, or null to look beside each
+     * scenario file
+     * @throws IllegalArgumentException If the engine only takes unit steps
+     */
+    public SuiteRunner(SearchOptions options, double tolerance, String maps) {
+        if (!octile(options.engine)) {
+            throw new IllegalArgumentException("the " + options.engine + " engine only takes unit steps");
+        }
+
+        this.options = options.withMetric(Metric.OCTILE);
+        this.tolerance = tolerance;
+        this.maps = maps;
+    }
+
+    /**
+     * Determines whether an engine can search octile steps.
+     * @param engine Engine
+     * @return True unless it only takes unit steps
+     */
+    public static boolean octile(Engine engine) {
+        return engine != Engine.CLASSIC && engine != Engine.CPD;
+    }
+
+    /**
+     * Runs every scenario of a file.
+     * @param path Path of the .scen file
+     * @throws IOException If a file can't be read
+     */
+    public void run(String path) throws IOException {
+        List<Scenario> scenarios = MovingAi.loadScenarios(path);
+
+        for (Scenario scenario : scenarios) {
+            char[][] tileMap = map(path, scenario.map);
+
+            if (tileMap.length != scenario.height || tileMap[0].length != scenario.width) {
+                throw new IOException("map " + scenario.map + " is not " + scenario.width + "x" + scenario.height);
+            }
+
+            // The graph is built once per map, outside the timed search
+            if (options.engine == Engine.SUBGOAL && !graphs.containsKey(tileMap)) {
+                graphs.put(tileMap, new SubgoalGraph(tileMap));
+            }
+
+            solve(scenario, tileMap);
+        }
+    }
+
+    /**
+     * Solves one scenario. Only the search itself is timed.
+     * @param scenario Scenario
+     * @param tileMap Its map
+     */
+    protected void solve(Scenario scenario, char[][] tileMap) {
+        Astar astar = new Astar(tileMap, scenario.startX, scenario.startY, scenario.goalX, scenario.goalY);
+
+        astar.setSubgoals(graphs.get(tileMap));
+
+        long start = System.nanoTime();
+
+        Node path = astar.find(options);
+
+        long nanos = System.nanoTime() - start;
+
+        Bucket bucket = buckets.get(scenario.bucket);
+
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(scenario.bucket, bucket);
+        }
+
+        bucket.queries++;
+        bucket.expansions += astar.getExpansions();
+        bucket.nanos += nanos;
+
+        if (path == null) {
+            return;
+        }
+
+        bucket.solved++;
+
+        double error = Math.abs(path.getDistance() - scenario.optimal);
+
+        bucket.worst = Math.max(bucket.worst, error);
+
+        if (error <= tolerance) {
+            bucket.optimal++;
+        }
+    }
+
+    /**
+     * Gets a map, loading it the first time.
+     * @param scen Path of the scenario file naming it
+     * @param name Map name in the scenario file
+     * @return Tile map
+     * @throws IOException If the map can't be read
+     */
+    protected char[][] map(String scen, String name) throws IOException {
+        File file = maps != null
+                ? new File(maps, new File(name).getName())
+                : new File(new File(scen).getAbsoluteFile().getParentFile(), name);
+
+        // Scenario files often name maps by a path from another root
+        if (!file.isFile()) {
+            file = new File(new File(scen).getAbsoluteFile().getParentFile(), new File(name).getName());
+        }
+
+        String path = file.getPath();
+        char[][] tileMap = loaded.get(path);
+
+        if (tileMap == null) {
+            tileMap = MovingAi.loadMap(path);
+            loaded.put(path, tileMap);
+        }
+
+        return tileMap;
+    }
+
+    /**
+     * Builds the report, one row per bucket and a last row for all of them.
+     * @param format Either csv or json
+     * @return Report
+     */
+    @SuppressWarnings("unchecked")
+    public String report(String format) {
+        String[] keys = {"bucket", "queries", "solved", "optimal", "worst_error", "expansions", "mean_expansions",
+            "total_ms", "mean_us"};
+
+        Bucket all = new Bucket();
+
+        JSONArray json = new JSONArray();
+        StringBuilder sb = new StringBuilder(String.join(",", keys)).append("\n");
+
+        for (Map.Entry<Integer, Bucket> entry : buckets.entrySet()) {
+            Bucket b = entry.getValue();
+
+            all.queries += b.queries;
+            all.solved += b.solved;
+            all.optimal += b.optimal;
+            all.expansions += b.expansions;
+            all.nanos += b.nanos;
+            all.worst = Math.max(all.worst, b.worst);
+
+            row(keys, entry.getKey().toString(), b, json, sb);
+        }
+
+        row(keys, "all", all, json, sb);
+
+        return format.equals(FORMAT_JSON) ? json.toJSONString() : sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void row(String[] keys, String name, Bucket b, JSONArray json, StringBuilder sb) {
+        int n = Math.max(1, b.queries);
+
+        Object[] values = {name, b.queries, b.solved, b.optimal, b.worst, b.expansions,
+            (double) b.expansions / n, b.nanos / 1e6, b.nanos / 1e3 / n};
+
+        JSONObject object = new JSONObject();
+
+        for (int k = 0; k < keys.length; k++) {
+            object.put(keys[k], values[k]);
+            sb.append(k == 0 ? "" : ",").append(values[k]);
+        }
+
+        json.add(object);
+        sb.append("\n");
+    }
+
+    /**
+     * Determines whether every solved query was optimal and every query
+     * was solved.
+     * @return True if the suite passed
+     */
+    public boolean passed() {
+        for (Bucket b : buckets.values()) {
+            if (b.optimal != b.queries) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Main method.
+     * @param args Command line arguments, see class comment
+     * @throws IOException If a file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        SearchOptions options = Config.getInstance().getDefaults()
+                .withEngine(Engine.HEAP)
+                .withHeuristic(Heuristic.OCTILE);
+
+        double tolerance = DEFAULT_TOLERANCE;
+        String maps = null;
+        String format = FORMAT_CSV;
+        List<String> scens = new ArrayList<>();
+
+        // Every option takes a value
+        if (args.length % 2 != 0) {
+            System.err.println("no value for option " + args[args.length - 1]);
+            System.exit(1);
+        }
+
+        for (int k = 0; k + 1 < args.length; k += 2) {
+            String value = args[k + 1];
+
+            switch (args[k]) {
+                case "-scen":
+                    scens.add(value);
+                    break;
+                case "-maps":
+                    maps = value;
+                    break;
+                case "-engine":
+                    options = options.withEngine(Engine.valueOf(value.toUpperCase()));
+                    break;
+                case "-heuristic":
+                    options = options.withHeuristic(Heuristic.valueOf(value.toUpperCase()));
+                    break;
+                case "-tolerance":
+                    tolerance = Double.parseDouble(value);
+                    break;
+                case "-format":
+                    format = value.toLowerCase();
+                    break;
+                default:
+                    System.err.println("bad option " + args[k]);
+                    System.exit(1);
+            }
+        }
+
+        if (scens.isEmpty()) {
+            System.err.println("no scenario files, use -scen file.scen");
+            System.exit(1);
+        }
+
+        if (!octile(options.engine)) {
+            System.err.println("the " + options.engine.name().toLowerCase() + " engine only takes unit steps");
+            System.exit(1);
+        }
+
+        SuiteRunner runner = new SuiteRunner(options, tolerance, maps);
+
+        for (String scen : scens) {
+            runner.run(scen);
+        }
+
+        System.out.print(runner.report(format));
+
+        if (!runner.passed()) {
+            System.exit(2);
+        }
+    }
+}
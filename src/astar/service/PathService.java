@@ -0,0 +1,522 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.service;
+
+import astar.Astar;
+import astar.CompactPath;
+import astar.ComponentIndex;
+import astar.CostLayer;
+import astar.LevelGenerator;
+import astar.Snapshot;
+import astar.util.Config;
+import astar.util.Config.Engine;
+import astar.util.Config.Objective;
+import astar.util.SearchOptions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A long-lived local pathfinding service. Maps are loaded and indexed once
+ * at start-up; queries arrive over HTTP and are pooled, and the worker
+ * threads take them off the queue in batches, in parallel.
+ * <p>
+ * A worker groups its batch by map and runs each group back to back, so
+ * the queries share the map's indices and the worker's reused search
+ * state while they are warm in cache. A query asked more than once in a
+ * batch is solved once.
+ * <p>
+ * <code>POST /path?map=name</code> takes one query per line,
+ * <code>startX startY destX destY</code>, and answers one line per query:
+ * the path in the text form of {@link CompactPath}, or <code>-</code> if
+ * there is none.
+ * <code>GET /maps</code> lists the loaded maps.
+ * <p>
+ * Usage: <code>PathService [-port port] [-threads count] [-batch size]
+ * [-engine classic|heap|off_heap|parallel|fringe] [-map name=file]... [-seed seed]
+ * [-snapshots directory]</code>
+ * <p>
+ * The engine defaults to {@link #DEFAULT_ENGINE}, not the configured one,
+ * since the classic engine is the slowest.
+ * <p>
+ * With a snapshot directory the indices of each map are memory-mapped from
+ * <code>name.snap</code> there, and built and saved only if it is missing
+ * or stale.
+ *
+ * @author Ron Coleman
+ */
+public class PathService {
+    public final static int DEFAULT_PORT = 8086;
+    public final static int DEFAULT_BATCH = 64;
+    public final static Engine DEFAULT_ENGINE = Engine.HEAP;
+    public final static String NO_PATH = "-";
+
+    protected final Map<String, Level> levels = new ConcurrentHashMap<>();
+    protected final BlockingQueue<Query> queue = new LinkedBlockingQueue<>();
+    protected final SearchOptions options;
+    protected final int threads;
+    protected final int batch;
+
+    // Directory of map snapshots, or null to build indices in memory
+    protected String snapshots;
+
+    protected HttpServer server;
+    protected ExecutorService workers;
+
+    /**
+     * A loaded map and the indices built over it.
+     */
+    protected static class Level {
+        final char[][] tileMap;
+        final ComponentIndex components;
+        final CostLayer costs;
+
+        Level(char[][] tileMap, ComponentIndex components, CostLayer costs) {
+            this.tileMap = tileMap;
+            this.components = components;
+            this.costs = costs;
+        }
+    }
+
+    /**
+     * One pending query.
+     */
+    protected static class Query {
+        final Level level;
+        final int startX;
+        final int startY;
+        final int destX;
+        final int destY;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Query(Level level, int startX, int startY, int destX, int destY) {
+            this.level = level;
+            this.startX = startX;
+            this.startY = startY;
+            this.destX = destX;
+            this.destY = destY;
+        }
+
+        /**
+         * Gets a key equal for queries with the same ends.
+         */
+        String ends() {
+            return startX + " " + startY + " " + destX + " " + destY;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param options Search options for every query
+     * @param threads Number of worker threads
+     * @param batch Most queries a worker takes at once
+     * @throws IllegalArgumentException If the engine needs an index the
+     * service doesn't build, or can't search the objective
+     */
+    public PathService(SearchOptions options, int threads, int batch) {
+        if (options.engine == Engine.SUBGOAL || options.engine == Engine.CPD) {
+            throw new IllegalArgumentException("the service has no index for the " + options.engine + " engine");
+        }
+
+        if (options.engine != Engine.CLASSIC && options.objective == Objective.ANY_ANGLE) {
+            throw new IllegalArgumentException("only the classic engine finds any-angle paths");
+        }
+
+        this.options = options;
+        this.threads = threads;
+        this.batch = batch;
+    }
+
+    /**
+     * Adds a map from a file in Astar's text format.
+     * @param name Map name
+     * @param path File path
+     * @throws IOException If the map's snapshot can't be read or written
+     */
+    public void load(String name, String path) throws IOException {
+        Astar astar = new Astar(path);
+
+        astar.loadMap();
+
+        add(name, astar.getTileMap());
+    }
+
+    /**
+     * Adds a map.
+     * @param name Map name
+     * @param tileMap Tile map
+     * @throws IOException If the map's snapshot can't be read or written
+     */
+    public void add(String name, char[][] tileMap) throws IOException {
+        ComponentIndex components;
+
+        if (snapshots == null) {
+            components = new ComponentIndex(tileMap);
+        } else {
+            String path = new File(snapshots, name + ".snap").getPath();
+
+            components = Snapshot.loadOrBuild(path, tileMap).getComponents();
+        }
+
+        // The other engines search the objective compiled into the costs,
+        // so compile it once per map rather than once per query
+        CostLayer costs = null;
+
+        if (options.engine != Engine.CLASSIC && (options.objective == Objective.PRETTY || options.objective == Objective.STEALTHY)) {
+            costs = CostLayer.compile(tileMap, options.objective);
+        }
+
+        levels.put(name, new Level(tileMap, components, costs));
+    }
+
+    /**
+     * Sets where map snapshots are kept. Maps added afterwards use them.
+     * @param snapshots Directory, or null to build indices in memory
+     */
+    public void setSnapshots(String snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Starts the workers and the HTTP server.
+     * @param port Port on the loopback interface
+     * @throws IOException If the port can't be bound
+     */
+    public void start(int port) throws IOException {
+        workers = Executors.newFixedThreadPool(threads);
+
+        for (int k = 0; k < threads; k++) {
+            workers.submit(this::work);
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/path", this::handlePath);
+        server.createContext("/maps", this::handleMaps);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /**
+     * Stops the server and the workers.
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues a query.
+     * @param name Map name
+     * @param startX Start X coordinate
+     * @param startY Start Y coordinate
+     * @param destX Destination X coordinate
+     * @param destY Destination Y coordinate
+     * @return Encoded path once a worker gets to it
+     */
+    public CompletableFuture<String> submit(String name, int startX, int startY, int destX, int destY) {
+        Level level = levels.get(name);
+
+        if (level == null) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("no map " + name));
+            return failed;
+        }
+
+        Query query = new Query(level, startX, startY, destX, destY);
+        queue.add(query);
+
+        return query.result;
+    }
+
+    /**
+     * Worker loop: block for one query, then take whatever else is waiting
+     * up to the batch size and solve the batch.
+     */
+    protected void work() {
+        List<Query> taken = new ArrayList<>(batch);
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                taken.add(queue.take());
+                queue.drainTo(taken, batch - 1);
+
+                solve(taken);
+
+                taken.clear();
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        } finally {
+            // Whatever stopped this worker, no caller may wait forever on
+            // a query it took; completed ones are left as they are
+            for (Query query : taken) {
+                query.result.completeExceptionally(new IllegalStateException("worker stopped"));
+            }
+        }
+    }
+
+    /**
+     * Solves a batch, a map at a time, solving repeated queries once.
+     * @param taken Queries
+     */
+    protected void solve(List<Query> taken) {
+        Map<Level, List<Query>> byLevel = new LinkedHashMap<>();
+
+        for (Query query : taken) {
+            byLevel.computeIfAbsent(query.level, level -> new ArrayList<>()).add(query);
+        }
+
+        for (List<Query> group : byLevel.values()) {
+            Map<String, String> solved = new HashMap<>();
+
+            for (Query query : group) {
+                try {
+                    String path = solved.get(query.ends());
+
+                    if (path == null) {
+                        path = solve(query);
+                        solved.put(query.ends(), path);
+                    }
+
+                    query.result.complete(path);
+                } catch (RuntimeException e) {
+                    query.result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves one query.
+     * @param query Query
+     * @return Encoded path
+     */
+    protected String solve(Query query) {
+        Level level = query.level;
+        int width = level.tileMap[0].length;
+        int height = level.tileMap.length;
+
+        if (!inside(query.startX, query.startY, width, height) || !inside(query.destX, query.destY, width, height)) {
+            return NO_PATH;
+        }
+
+        Astar astar = new Astar(level.tileMap, query.startX, query.startY, query.destX, query.destY);
+        astar.setComponents(level.components);
+        astar.setCosts(level.costs);
+
+        CompactPath path = astar.findCompact(options);
+
+        return path == null ? NO_PATH : path.toString();
+    }
+
+    private static boolean inside(int x, int y, int width, int height) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    protected void handlePath(HttpExchange exchange) throws IOException {
+        String name = query(exchange, "map");
+
+        if (!levels.containsKey(name)) {
+            respond(exchange, 404, "no map " + name + "\n");
+            return;
+        }
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line);
+
+                if (!st.hasMoreTokens()) {
+                    continue;
+                }
+
+                int startX = Integer.parseInt(st.nextToken());
+                int startY = Integer.parseInt(st.nextToken());
+                int destX = Integer.parseInt(st.nextToken());
+                int destY = Integer.parseInt(st.nextToken());
+
+                results.add(submit(name, startX, startY, destX, destY));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "bad query: " + e + "\n");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        try {
+            for (CompletableFuture<String> result : results) {
+                sb.append(result.get()).append('\n');
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 500, "interrupted\n");
+            return;
+        } catch (ExecutionException e) {
+            respond(exchange, 500, e.getCause() + "\n");
+            return;
+        }
+
+        respond(exchange, 200, sb.toString());
+    }
+
+    protected void handleMaps(HttpExchange exchange) throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, Level> entry : levels.entrySet()) {
+            char[][] tileMap = entry.getValue().tileMap;
+
+            sb.append(entry.getKey()).append(' ')
+                    .append(tileMap[0].length).append(' ')
+                    .append(tileMap.length).append('\n');
+        }
+
+        respond(exchange, 200, sb.toString());
+    }
+
+    private static String query(HttpExchange exchange, String key) {
+        String query = exchange.getRequestURI().getQuery();
+
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+
+                if (eq > 0 && pair.substring(0, eq).equals(key)) {
+                    return pair.substring(eq + 1);
+                }
+            }
+        }
+
+        return "default";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Main method.
+     * @param args Command line arguments, see class comment
+     * @throws IOException If the server can't start
+     */
+    public static void main(String[] args) throws IOException {
+        Config config = Config.getInstance();
+
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = DEFAULT_BATCH;
+        long seed = System.currentTimeMillis();
+        SearchOptions options = config.getDefaults().withEngine(DEFAULT_ENGINE);
+        List<String[]> maps = new ArrayList<>();
+        String snapshots = null;
+
+        // Every option takes a value
+        if (args.length % 2 != 0) {
+            System.err.println("no value for option " + args[args.length - 1]);
+            System.exit(1);
+        }
+
+        for (int k = 0; k + 1 < args.length; k += 2) {
+            String value = args[k + 1];
+
+            switch (args[k]) {
+                case "-port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "-batch":
+                    batch = Integer.parseInt(value);
+                    break;
+                case "-engine":
+                    options = options.withEngine(Engine.valueOf(value.toUpperCase()));
+                    break;
+                case "-map":
+                    String[] map = value.split("=", 2);
+
+                    if (map.length != 2 || map[0].isEmpty() || map[1].isEmpty()) {
+                        System.err.println("bad map " + value + ", use -map name=file");
+                        System.exit(1);
+                    }
+
+                    maps.add(map);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "-snapshots":
+                    snapshots = value;
+                    break;
+                default:
+                    System.err.println("bad option " + args[k]);
+                    System.exit(1);
+            }
+        }
+
+        PathService service = new PathService(options, threads, batch);
+        service.setSnapshots(snapshots);
+
+        for (String[] map : maps) {
+            service.load(map[0], map[1]);
+        }
+
+        // Without maps, serve one generated world
+        if (maps.isEmpty()) {
+            LevelGenerator world = new LevelGenerator(config.map.width, config.map.height, seed);
+            world.layout();
+            service.add("default", world.getMap());
+        }
+
+        service.start(port);
+
+        System.out.println("serving " + service.levels.keySet() + " on port " + port);
+    }
+}
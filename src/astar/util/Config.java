@@ -1,9 +1,19 @@
 package astar.util;
 
+import static astar.util.Config.Engine.CLASSIC;
+import static astar.util.Config.Engine.CPD;
+import static astar.util.Config.Engine.FRINGE;
+import static astar.util.Config.Engine.HEAP;
+import static astar.util.Config.Engine.OFF_HEAP;
+import static astar.util.Config.Engine.PARALLEL;
+import static astar.util.Config.Engine.SUBGOAL;
 import static astar.util.Config.Heuristic.CHECKERS;
 import static astar.util.Config.Heuristic.EUCLIDEAN;
 import static astar.util.Config.Heuristic.MANHATTAN;
+import static astar.util.Config.Heuristic.OCTILE;
 import static astar.util.Config.Heuristic.SSE;
+import static astar.util.Config.Metric.UNIT;
+import static astar.util.Config.Objective.ANY_ANGLE;
 import static astar.util.Config.Objective.BASIC;
 import static astar.util.Config.Objective.PRETTY;
 import static astar.util.Config.Objective.STEALTHY;
@@ -24,17 +34,36 @@ public class Config {
         EUCLIDEAN,
         MANHATTAN,
         CHECKERS,
-        SSE
+        SSE,
+        OCTILE
     }
     
     public enum Objective {
         BASIC,
         PRETTY,
-        STEALTHY
+        STEALTHY,
+        ANY_ANGLE
     };
     
+    public enum Engine {
+        CLASSIC,
+        HEAP,
+        OFF_HEAP,
+        PARALLEL,
+        FRINGE,
+        SUBGOAL,
+        CPD
+    }
+    
+    public enum Metric {
+        UNIT,
+        OCTILE
+    }
+    
     public Heuristic heuristic = EUCLIDEAN;
     public Objective objective = BASIC;
+    public Engine engine = CLASSIC;
+    public Metric metric = UNIT;
     public final int WORLD_WIDTH = 20;
     public final int WORLD_HEIGHT = 20;
     public Map map = new Map(WORLD_WIDTH,WORLD_HEIGHT);
@@ -64,17 +93,26 @@ public class Config {
         return getInstance(CONFIG_PATH);
     }
     
-    public static Config getInstance(String path) {
+    public static synchronized Config getInstance(String path) {
         if (config != null)
             return config;
 
         config = new Config();
 
-        config.load(CONFIG_PATH);
+        config.load(path);
 
         return config;
     }
     
+    /**
+     * Gets the search options described by this configuration. Searches
+     * take these as their defaults instead of reading the configuration.
+     * @return Search options with no node limit or deadline
+     */
+    public SearchOptions getDefaults() {
+        return new SearchOptions(heuristic, objective, engine, metric, Integer.MAX_VALUE, SearchOptions.NO_DEADLINE);
+    }
+    
     /**
      * Gets a configuration single t
      * @param path Path to the config file.
@@ -101,8 +139,11 @@ public class Config {
                 case "sse":
                     heuristic = SSE;
                     break;
+                case "octile":
+                    heuristic = OCTILE;
+                    break;
                 default:
-                    System.err.println("bad heuristic in "+CONFIG_PATH);
+                    System.err.println("bad heuristic in "+path);
             }
             
             String obj = (String) json.get("objective");
@@ -116,8 +157,56 @@ public class Config {
                 case "stealthy":
                     objective = STEALTHY;
                     break;
+                case "anyangle":
+                    objective = ANY_ANGLE;
+                    break;
                 default:
-                    System.err.println("bad objective in "+CONFIG_PATH);
+                    System.err.println("bad objective in "+path);
+            }
+            
+            // Engine is optional, older files don't have one
+            String eng = (String) json.get("engine");
+            if (eng != null) {
+                switch (eng) {
+                    case "classic":
+                        engine = CLASSIC;
+                        break;
+                    case "heap":
+                        engine = HEAP;
+                        break;
+                    case "offheap":
+                        engine = OFF_HEAP;
+                        break;
+                    case "parallel":
+                        engine = PARALLEL;
+                        break;
+                    case "fringe":
+                        engine = FRINGE;
+                        break;
+                    case "subgoal":
+                        engine = SUBGOAL;
+                        break;
+                    case "cpd":
+                        engine = CPD;
+                        break;
+                    default:
+                        System.err.println("bad engine in "+path);
+                }
+            }
+
+            // Metric is optional too
+            String met = (String) json.get("metric");
+            if (met != null) {
+                switch (met) {
+                    case "unit":
+                        metric = UNIT;
+                        break;
+                    case "octile":
+                        metric = Metric.OCTILE;
+                        break;
+                    default:
+                        System.err.println("bad metric in "+path);
+                }
             }
 
         } catch (IOException | ParseException ex) {
@@ -0,0 +1,108 @@
+package astar.util;
+
+import astar.util.Config.Engine;
+import astar.util.Config.Heuristic;
+import astar.util.Config.Metric;
+import astar.util.Config.Objective;
+
+/**
+ * Immutable options for one search. Each with-method returns a copy, so a
+ * single defaults instance can be shared by any number of threads and
+ * tailored per request without locking.
+ *
+ * @author Ron Coleman
+ */
+public final class SearchOptions {
+    /** Deadline meaning the search may run as long as it likes */
+    public final static long NO_DEADLINE = Long.MAX_VALUE;
+
+    public final Heuristic heuristic;
+    public final Objective objective;
+    public final Engine engine;
+
+    /** Step costs and diagonal rules; the classic engine only knows UNIT */
+    public final Metric metric;
+
+    /** Maximum number of nodes to generate */
+    public final int limit;
+
+    /** System.nanoTime() after which the search gives up */
+    public final long deadline;
+
+    /**
+     * Constructor with unit steps.
+     * @param heuristic Heuristic
+     * @param objective Search objective
+     * @param engine Search engine
+     * @param limit Maximum number of nodes to generate
+     * @param deadline System.nanoTime() after which the search gives up
+     */
+    public SearchOptions(Heuristic heuristic, Objective objective, Engine engine, int limit, long deadline) {
+        this(heuristic, objective, engine, Metric.UNIT, limit, deadline);
+    }
+
+    /**
+     * Constructor.
+     * @param heuristic Heuristic
+     * @param objective Search objective
+     * @param engine Search engine
+     * @param metric Step costs and diagonal rules
+     * @param limit Maximum number of nodes to generate
+     * @param deadline System.nanoTime() after which the search gives up
+     */
+    public SearchOptions(Heuristic heuristic, Objective objective, Engine engine, Metric metric, int limit, long deadline) {
+        this.heuristic = heuristic;
+        this.objective = objective;
+        this.engine = engine;
+        this.metric = metric;
+        this.limit = limit;
+        this.deadline = deadline;
+    }
+
+    public SearchOptions withHeuristic(Heuristic heuristic) {
+        return new SearchOptions(heuristic, objective, engine, metric, limit, deadline);
+    }
+
+    public SearchOptions withObjective(Objective objective) {
+        return new SearchOptions(heuristic, objective, engine, metric, limit, deadline);
+    }
+
+    public SearchOptions withEngine(Engine engine) {
+        return new SearchOptions(heuristic, objective, engine, metric, limit, deadline);
+    }
+
+    public SearchOptions withMetric(Metric metric) {
+        return new SearchOptions(heuristic, objective, engine, metric, limit, deadline);
+    }
+
+    public SearchOptions withLimit(int limit) {
+        return new SearchOptions(heuristic, objective, engine, metric, limit, deadline);
+    }
+
+    public SearchOptions withDeadline(long deadline) {
+        return new SearchOptions(heuristic, objective, engine, metric, limit, deadline);
+    }
+
+    /**
+     * Sets the deadline relative to now.
+     * @param millis Time budget in milliseconds
+     * @return Options
+     */
+    public SearchOptions withTimeout(long millis) {
+        return withDeadline(System.nanoTime() + millis * 1000000L);
+    }
+
+    /**
+     * Tests if the deadline has passed.
+     * @return True if the search should give up
+     */
+    public boolean expired() {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "heuristic=" + heuristic + " objective=" + objective + " engine=" + engine + " metric=" + metric
+                + " limit=" + limit;
+    }
+}
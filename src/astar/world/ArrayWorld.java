@@ -0,0 +1,56 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.world;
+
+/**
+ * A world held entirely in a tile map.
+ *
+ * @author Ron Coleman
+ */
+public class ArrayWorld implements World {
+    protected final char[][] tileMap;
+
+    /**
+     * Constructor.
+     * @param tileMap Tile map, indexed [y][x]
+     */
+    public ArrayWorld(char[][] tileMap) {
+        this.tileMap = tileMap;
+    }
+
+    @Override
+    public int getWidth() {
+        return tileMap[0].length;
+    }
+
+    @Override
+    public int getHeight() {
+        return tileMap.length;
+    }
+
+    @Override
+    public char getTile(int x, int y) {
+        return tileMap[y][x];
+    }
+
+    public char[][] getTileMap() {
+        return tileMap;
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.world;
+
+import astar.Astar;
+import astar.jfr.SearchEvents;
+import astar.jfr.Status;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class pages a world too large for the heap in and out of a backing
+ * file one square chunk at a time, keeping the least recently used chunks
+ * resident.
+ * <p>
+ * The file is a 32 byte header (magic, version, width, height, chunk size)
+ * followed by the chunks in row-major order, each chunk its tiles in
+ * row-major order, one byte per tile. Edge chunks are stored full size. A
+ * zero byte is a free tile so a new world is just a sparse file.
+ * <p>
+ * Reads are safe from many threads. Writes go through the cache lock and
+ * reach the file when their chunk is evicted or on {@link #flush()}.
+ * <p>
+ * The chunks are reached through mappings of the file made once, each
+ * covering as many whole chunks as fit in {@link #SEGMENT_SIZE} bytes.
+ * Java has no way to unmap a file, so the mappings last until the world is
+ * garbage collected, not just until {@link #close()}.
+ *
+ * @author Ron Coleman
+ */
+public class ChunkedWorld implements World, Closeable, Status {
+    public final static int MAGIC = 0x4F41574D;
+    public final static int VERSION = 1;
+    public final static int HEADER_SIZE = 32;
+    public final static int DEFAULT_CHUNK = 256;
+
+    // Most bytes of the file one mapping covers
+    public final static int SEGMENT_SIZE = 1 << 30;
+
+    protected final RandomAccessFile file;
+    protected final FileChannel channel;
+    protected final int width;
+    protected final int height;
+    protected final int chunk;
+    protected final int chunksX;
+    protected final int resident;
+    protected final long chunks;
+
+    // Chunks per mapping, and the mappings, made as first needed
+    protected final int chunksPerSegment;
+    protected final MappedByteBuffer[] segments;
+
+    // Resident chunks by row-major index, in least recently used order
+    protected final LinkedHashMap<Long, Chunk> cache;
+
+    // Chunk of the last read, to skip the lock while a search stays local.
+    // Only set under the lock to a resident chunk, and cleared when that
+    // chunk is evicted.
+    private volatile Chunk last;
+
+    private long pageIns;
+
+    /**
+     * A resident chunk.
+     */
+    protected static class Chunk {
+        final long key;
+        final byte[] tiles;
+        boolean dirty;
+
+        Chunk(long key, byte[] tiles) {
+            this.key = key;
+            this.tiles = tiles;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param file Backing file, header already read
+     * @param width Width in tiles
+     * @param height Height in tiles
+     * @param chunk Chunk width and height in tiles
+     * @param resident Maximum number of resident chunks
+     * @throws IllegalArgumentException If the chunks need more mappings
+     * than an array holds
+     */
+    protected ChunkedWorld(RandomAccessFile file, int width, int height, int chunk, int resident) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.width = width;
+        this.height = height;
+        this.chunk = chunk;
+        this.chunksX = (width + chunk - 1) / chunk;
+        this.resident = Math.max(1, resident);
+
+        this.chunks = (long) chunksX * ((height + chunk - 1) / chunk);
+        this.chunksPerSegment = Math.max(1, SEGMENT_SIZE / (chunk * chunk));
+
+        // Tiny chunks of a huge world can run past an int of chunks, so
+        // chunk indices are longs, but the mappings must still fit an array
+        long count = (chunks + chunksPerSegment - 1) / chunksPerSegment;
+
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many chunks: " + chunks);
+        }
+
+        this.segments = new MappedByteBuffer[(int) count];
+
+        this.cache = new LinkedHashMap<Long, Chunk>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+                if (size() <= ChunkedWorld.this.resident) {
+                    return false;
+                }
+
+                Chunk c = eldest.getValue();
+
+                writeBack(c);
+
+                if (last == c) {
+                    last = null;
+                }
+
+                return true;
+            }
+        };
+
+        SearchEvents.watch(this);
+    }
+
+    /**
+     * Creates a new world of free tiles.
+     * @param path Backing file path, overwritten
+     * @param width Width in tiles
+     * @param height Height in tiles
+     * @param chunk Chunk width and height in tiles
+     * @param resident Maximum number of resident chunks
+     * @return World
+     * @throws IOException If the file can't be created
+     */
+    public static ChunkedWorld create(String path, int width, int height, int chunk, int resident) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+        long chunks = (long) ((width + chunk - 1) / chunk) * ((height + chunk - 1) / chunk);
+
+        file.setLength(0);
+        file.setLength(HEADER_SIZE + chunks * chunk * chunk);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(chunk);
+        header.flip();
+
+        file.getChannel().write(header, 0);
+
+        return new ChunkedWorld(file, width, height, chunk, resident);
+    }
+
+    /**
+     * Opens an existing world.
+     * @param path Backing file path
+     * @param resident Maximum number of resident chunks
+     * @return World
+     * @throws IOException If the file can't be read or isn't a world
+     */
+    public static ChunkedWorld open(String path, int resident) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        file.getChannel().read(header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            file.close();
+            throw new IOException("not a world file: " + path);
+        }
+
+        int width = header.getInt();
+        int height = header.getInt();
+        int chunk = header.getInt();
+
+        return new ChunkedWorld(file, width, height, chunk, resident);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChunkSize() {
+        return chunk;
+    }
+
+    @Override
+    public char getTile(int x, int y) {
+        long key = (long) (y / chunk) * chunksX + x / chunk;
+
+        Chunk c = last;
+
+        if (c == null || c.key != key) {
+            synchronized (cache) {
+                c = page(key);
+
+                // Publish under the lock so an eviction can't slip between
+                last = c;
+            }
+        }
+
+        return decode(c.tiles[(y % chunk) * chunk + x % chunk]);
+    }
+
+    /**
+     * Sets the symbol of a tile.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @param sym Tile symbol
+     */
+    public void setTile(int x, int y, char sym) {
+        long key = (long) (y / chunk) * chunksX + x / chunk;
+
+        synchronized (cache) {
+            Chunk c = page(key);
+
+            c.tiles[(y % chunk) * chunk + x % chunk] = encode(sym);
+            c.dirty = true;
+        }
+    }
+
+    /**
+     * Writes every dirty resident chunk to the file.
+     * @throws IOException If the write fails
+     */
+    public void flush() throws IOException {
+        synchronized (cache) {
+            for (Chunk c : cache.values()) {
+                writeBack(c);
+            }
+
+            for (MappedByteBuffer segment : segments) {
+                if (segment != null) {
+                    segment.force();
+                }
+            }
+        }
+
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+
+        file.close();
+    }
+
+    /**
+     * Gets the number of chunks read from the file so far.
+     * @return Page-ins
+     */
+    public long getPageIns() {
+        return pageIns;
+    }
+
+    public int getResidentChunks() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public String getStatusName() {
+        return "chunks";
+    }
+
+    @Override
+    public long getStatusEntries() {
+        return getResidentChunks();
+    }
+
+    @Override
+    public long getStatusBytes() {
+        return getStatusEntries() * chunk * chunk;
+    }
+
+    /**
+     * Gets a chunk, copying it out of the mapped file if it isn't resident.
+     * Caller holds the cache lock.
+     */
+    protected Chunk page(long key) {
+        Chunk c = cache.get(key);
+
+        if (c != null) {
+            return c;
+        }
+
+        byte[] tiles = new byte[chunk * chunk];
+
+        region(key).get(tiles);
+
+        pageIns++;
+
+        c = new Chunk(key, tiles);
+        cache.put(key, c);
+
+        return c;
+    }
+
+    /**
+     * Writes a chunk back if it changed. Caller holds the cache lock.
+     */
+    protected void writeBack(Chunk c) {
+        if (!c.dirty) {
+            return;
+        }
+
+        region(c.key).put(c.tiles);
+
+        c.dirty = false;
+    }
+
+    /**
+     * Gets a view of a chunk's bytes in its segment, mapping the segment
+     * the first time. Caller holds the cache lock.
+     */
+    protected ByteBuffer region(long key) {
+        int s = (int) (key / chunksPerSegment);
+
+        if (segments[s] == null) {
+            long first = (long) s * chunksPerSegment;
+
+            // The last segment may hold fewer chunks than the rest
+            long count = Math.min(chunksPerSegment, chunks - first);
+
+            try {
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, offset(first), count * chunk * chunk);
+            } catch (IOException e) {
+                throw new IllegalStateException("can't map chunks from " + first, e);
+            }
+        }
+
+        ByteBuffer region = segments[s].duplicate();
+        region.position((int) (key - (long) s * chunksPerSegment) * chunk * chunk);
+
+        return region;
+    }
+
+    protected long offset(long key) {
+        return HEADER_SIZE + (long) key * chunk * chunk;
+    }
+
+    /**
+     * Encodes a tile symbol as it is stored on disk.
+     * @param sym Tile symbol
+     * @return Byte, zero for a free tile
+     */
+    public static byte encode(char sym) {
+        return sym == Astar.SYMBOL_FREE ? 0 : (byte) sym;
+    }
+
+    protected static char decode(byte b) {
+        return b == 0 ? Astar.SYMBOL_FREE : (char) (b & 0xFF);
+    }
+}
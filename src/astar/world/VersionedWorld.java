@@ -0,0 +1,242 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar.world;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A world that can be edited while searches run. Readers take an immutable
+ * {@link Version} and search it; writers build the next version by copying
+ * only the chunks they touch and publish it with one atomic swap, so
+ * neither side waits on the other.
+ * <p>
+ * Writers are serialized among themselves. Each published version has a
+ * number one higher than the last, for caches keyed by version.
+ *
+ * @author Ron Coleman
+ */
+public class VersionedWorld {
+    public final static int DEFAULT_CHUNK = 64;
+
+    protected final int width;
+    protected final int height;
+    protected final int chunk;
+    protected final int chunksX;
+
+    protected final AtomicReference<Version> current = new AtomicReference<>();
+
+    /**
+     * An immutable view of the world at one version.
+     */
+    public static class Version implements World {
+        protected final long version;
+        protected final int width;
+        protected final int height;
+        protected final int chunk;
+        protected final int chunksX;
+
+        // Chunks are shared between versions and never written once published
+        protected final char[][] chunks;
+
+        Version(long version, int width, int height, int chunk, char[][] chunks) {
+            this.version = version;
+            this.width = width;
+            this.height = height;
+            this.chunk = chunk;
+            this.chunksX = (width + chunk - 1) / chunk;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public char getTile(int x, int y) {
+            return chunks[(y / chunk) * chunksX + x / chunk][(y % chunk) * chunk + x % chunk];
+        }
+
+        /**
+         * Gets the version number.
+         * @return Version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Copies this version into a tile map for code that needs one.
+         * @return Tile map, indexed [y][x]
+         */
+        public char[][] toTileMap() {
+            char[][] tileMap = new char[height][width];
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    tileMap[y][x] = getTile(x, y);
+                }
+            }
+
+            return tileMap;
+        }
+    }
+
+    /**
+     * Changes to apply as one new version.
+     */
+    public interface Edit {
+        void apply(Editor editor);
+    }
+
+    /**
+     * Writes tiles of the version being built. Only valid inside
+     * {@link VersionedWorld#update(Edit)}.
+     */
+    public class Editor {
+        protected final char[][] chunks;
+
+        // Chunks already copied for this edit
+        protected final boolean[] copied;
+
+        Editor(char[][] chunks) {
+            this.chunks = chunks;
+            this.copied = new boolean[chunks.length];
+        }
+
+        public char getTile(int x, int y) {
+            return chunks[(y / chunk) * chunksX + x / chunk][(y % chunk) * chunk + x % chunk];
+        }
+
+        public void setTile(int x, int y, char sym) {
+            int key = (y / chunk) * chunksX + x / chunk;
+            int index = (y % chunk) * chunk + x % chunk;
+
+            if (chunks[key][index] == sym) {
+                return;
+            }
+
+            if (!copied[key]) {
+                chunks[key] = chunks[key].clone();
+                copied[key] = true;
+            }
+
+            chunks[key][index] = sym;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Initial tiles, indexed [y][x]; copied
+     * @param chunk Chunk width and height in tiles
+     */
+    public VersionedWorld(char[][] tileMap, int chunk) {
+        this.height = tileMap.length;
+        this.width = tileMap[0].length;
+        this.chunk = chunk;
+        this.chunksX = (width + chunk - 1) / chunk;
+
+        int chunksY = (height + chunk - 1) / chunk;
+
+        // Edge chunks are full size; their tiles past the edge are unused
+        char[][] chunks = new char[chunksX * chunksY][chunk * chunk];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                chunks[(y / chunk) * chunksX + x / chunk][(y % chunk) * chunk + x % chunk] = tileMap[y][x];
+            }
+        }
+
+        current.set(new Version(0, width, height, chunk, chunks));
+    }
+
+    /**
+     * Constructor.
+     * @param tileMap Initial tiles, indexed [y][x]; copied
+     */
+    public VersionedWorld(char[][] tileMap) {
+        this(tileMap, DEFAULT_CHUNK);
+    }
+
+    /**
+     * Gets the latest version. It never changes, so a search can hold on to
+     * it for as long as it runs.
+     * @return Version
+     */
+    public Version snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Gets the latest version number.
+     * @return Version number
+     */
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * Applies changes and publishes them as one new version.
+     * @param edit Changes
+     * @return New version
+     */
+    public synchronized Version update(Edit edit) {
+        Version base = current.get();
+
+        // Only the table is copied up front; chunks are copied on write
+        Editor editor = new Editor(base.chunks.clone());
+
+        edit.apply(editor);
+
+        Version next = new Version(base.version + 1, width, height, chunk, editor.chunks);
+
+        current.set(next);
+
+        return next;
+    }
+
+    /**
+     * Sets the symbol of one tile as a new version.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @param sym Tile symbol
+     * @return New version
+     */
+    public Version setTile(int x, int y, char sym) {
+        return update(editor -> editor.setTile(x, y, sym));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChunkSize() {
+        return chunk;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ Copyright (c) 2015 Ron Coleman
+ Permission is hereby granted, free of charge, to any person obtaining
+ a copy of this software and associated documentation files (the
+ "Software"), to deal in the Software without restriction, including
+ without limitation the rights to use, copy, modify, merge, publish,
+ distribute, sublicense, and/or sell copies of the Software, and to
+ permit persons to whom the Software is furnished to do so, subject to
+ the following conditions:
+ The above copyright notice and this permission notice shall be
+ included in all copies or substantial portions of the Software.
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package astar;
+
+import astar.CooperativeAstar.Agent;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests of {@link CooperativeAstar} with agents that get in each other's
+ * way.
+ *
+ * @author Ron Coleman
+ */
+public class CooperativeAstarTest {
+    private static char[][] map(String... rows) {
+        char[][] tileMap = new char[rows.length][];
+
+        for (int k = 0; k < rows.length; k++) {
+            tileMap[k] = rows[k].toCharArray();
+        }
+
+        return tileMap;
+    }
+
+    /**
+     * Asserts that the table holds every cell of each plan for its agent.
+     */
+    private static void assertHeld(ReservationTable table, List<Agent> agents, List<int[]> plans, int time) {
+        for (int k = 0; k < agents.size(); k++) {
+            int[] plan = plans.get(k);
+
+            for (int t = 0; t < plan.length; t++) {
+                assertEquals("agent " + k + " at step " + t, agents.get(k).id, table.getOwner(plan[t], time + t));
+            }
+        }
+    }
+
+    /**
+     * Two agents swap ends of a corridor; one has to wait in the alcove.
+     */
+    @Test
+    public void testSwapInCorridor() {
+        char[][] tileMap = map(
+                "#######",
+                "#.....#",
+                "###.###",
+                "#######");
+        int width = tileMap[0].length;
+
+        ReservationTable table = new ReservationTable();
+        CooperativeAstar coop = new CooperativeAstar(tileMap, table, 8);
+
+        Agent a = new Agent(0, 1, 1, 5, 1);
+        Agent b = new Agent(1, 5, 1, 1, 1);
+        List<Agent> agents = Arrays.asList(a, b);
+
+        int time = 0;
+
+        for (; time < 20; time++) {
+            if (a.x == a.goalX && a.y == a.goalY && b.x == b.goalX && b.y == b.goalY) {
+                break;
+            }
+
+            List<int[]> plans = coop.planInOrder(agents, time);
+
+            assertHeld(table, agents, plans, time);
+
+            int[] moves = new int[agents.size()];
+
+            for (int k = 0; k < agents.size(); k++) {
+                Agent agent = agents.get(k);
+                int[] plan = plans.get(k);
+
+                moves[k] = plan.length > 1 ? plan[1] : agent.y * width + agent.x;
+            }
+
+            // Never the same cell, never through each other
+            assertNotEquals(moves[0], moves[1]);
+            assertTrue(moves[0] != b.y * width + b.x || moves[1] != a.y * width + a.x);
+
+            for (int k = 0; k < agents.size(); k++) {
+                agents.get(k).x = moves[k] % width;
+                agents.get(k).y = moves[k] / width;
+
+                table.release(agents.get(k).id, plans.get(k), time);
+            }
+        }
+
+        assertTrue("agents never got past each other", time < 20);
+    }
+
+    /**
+     * An agent with nowhere to go keeps no cell another agent holds.
+     */
+    @Test
+    public void testCorneredAgentWaits() {
+        char[][] tileMap = map(
+                "####",
+                "#..#",
+                "####");
+
+        ReservationTable table = new ReservationTable();
+        CooperativeAstar coop = new CooperativeAstar(tileMap, table, 4);
+
+        // The first agent steps into the second's cell, which can't move
+        // aside: the tiles are swapped or shared if it stays
+        List<Agent> agents = Arrays.asList(new Agent(0, 1, 1, 2, 1), new Agent(1, 2, 1, 2, 1));
+        List<int[]> plans = coop.planInOrder(agents, 0);
+
+        assertHeld(table, agents, plans, 0);
+        assertEquals(coop.getWindow() + 1, plans.get(0).length);
+        assertEquals(1, plans.get(1).length);
+    }
+
+    /**
+     * Planning in parallel gives the same guarantees as in order.
+     */
+    @Test
+    public void testBatchHoldsEveryCell() throws InterruptedException {
+        char[][] tileMap = map(
+                "#######",
+                "#.....#",
+                "###.###",
+                "#######");
+
+        ReservationTable table = new ReservationTable();
+        CooperativeAstar coop = new CooperativeAstar(tileMap, table, 8);
+
+        List<Agent> agents = Arrays.asList(new Agent(0, 1, 1, 5, 1), new Agent(1, 5, 1, 1, 1));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        try {
+            assertHeld(table, agents, coop.planBatch(agents, 0, pool), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}